@@ -0,0 +1,80 @@
+package org.indusbox.flamingo.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.apache.http.HttpEntity;
+import org.indusbox.flamingo.bulk.BulkChunk;
+import org.indusbox.flamingo.bulk.BulkChunkReader;
+import org.indusbox.flamingo.bulk.GzipCompressedEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Splits a large script into bulk chunks and writes their request bodies, as sent to the _bulk endpoint, to a discarding stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BulkEncodingBenchmark {
+
+  private static final int MAX_ACTIONS = 1000;
+
+  @Param({"67108864"})
+  public long scriptBytes;
+
+  @Param({"1048576", "5242880"})
+  public long maxBytes;
+
+  @Param({"false", "true"})
+  public boolean compression;
+
+  private File script;
+  private final OutputStream out = ByteStreams.nullOutputStream();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.script = ScriptTrees.createScript(this.scriptBytes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ScriptTrees.delete(this.script);
+  }
+
+  @Benchmark
+  public long encode() throws IOException {
+    long chunks = 0;
+    try (BulkChunkReader reader = BulkChunkReader.open(this.script, MAX_ACTIONS, this.maxBytes, null)) {
+      BulkChunk chunk;
+      while ((chunk = reader.next()) != null) {
+        HttpEntity entity = chunk.toEntity();
+        if (this.compression) {
+          entity = new GzipCompressedEntity(entity, Deflater.DEFAULT_COMPRESSION);
+        }
+        entity.writeTo(this.out);
+        chunks++;
+      }
+    }
+    return chunks;
+  }
+}
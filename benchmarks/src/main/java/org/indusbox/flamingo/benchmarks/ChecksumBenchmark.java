@@ -0,0 +1,58 @@
+package org.indusbox.flamingo.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.indusbox.flamingo.scripts.ChecksumAlgorithm;
+import org.indusbox.flamingo.scripts.ScriptFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computes the checksum of a script with each algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumBenchmark {
+
+  @Param({"md5", "sha256", "murmur3_128"})
+  public String algorithm;
+
+  @Param({"1048576", "67108864"})
+  public long scriptBytes;
+
+  private File script;
+  private ChecksumAlgorithm checksumAlgorithm;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.script = ScriptTrees.createScript(this.scriptBytes);
+    this.checksumAlgorithm = ChecksumAlgorithm.fromName(this.algorithm);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ScriptTrees.delete(this.script);
+  }
+
+  @Benchmark
+  public String checksum() throws IOException {
+    return ScriptFile.checksum(this.script, this.checksumAlgorithm);
+  }
+}
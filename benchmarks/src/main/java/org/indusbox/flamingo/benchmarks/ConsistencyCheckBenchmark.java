@@ -0,0 +1,87 @@
+package org.indusbox.flamingo.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.indusbox.flamingo.Migration;
+import org.indusbox.flamingo.scripts.ChecksumAlgorithm;
+import org.indusbox.flamingo.scripts.ChecksumCache;
+import org.indusbox.flamingo.scripts.MigrationState;
+import org.indusbox.flamingo.scripts.ScriptEntry;
+import org.indusbox.flamingo.scripts.ScriptInventory;
+import org.indusbox.flamingo.scripts.ScriptMetadata;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checks a scripts directory whose scripts have all been executed, the no-op migration, against a state loaded beforehand.
+ * Each invocation scans the directory again, as a migration does, then hashes the scripts or reads their checksums from the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConsistencyCheckBenchmark {
+
+  @Param({"1000", "10000"})
+  public int scripts;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private File scriptsDir;
+  private File checksumCacheFile;
+  private MigrationState state;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.scriptsDir = ScriptTrees.createTree(this.scripts);
+    this.checksumCacheFile = File.createTempFile("flamingo-benchmark", ".checksums");
+    this.checksumCacheFile.delete();
+    ChecksumCache checksumCache = ChecksumCache.load(this.checksumCacheFile);
+    List<ScriptMetadata> executedScripts = new ArrayList<>(this.scripts);
+    for (ScriptEntry script : ScriptInventory.scan(this.scriptsDir, checksumCache).getScripts()) {
+      executedScripts.add(new ScriptMetadata(script.getName(), script.getName(), script.getChecksum(ChecksumAlgorithm.MD5), DateTime.now(), true));
+    }
+    checksumCache.save();
+    this.state = new MigrationState(executedScripts);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ScriptTrees.delete(this.scriptsDir);
+    ScriptTrees.delete(this.checksumCacheFile);
+  }
+
+  @Benchmark
+  public int checkHashedScripts() throws IOException {
+    ScriptInventory inventory = ScriptInventory.scan(this.scriptsDir);
+    inventory.computeChecksums(this.state.getScripts(), this.threads);
+    return Migration.checkConsistency(inventory, this.state, Collections.<ScriptMetadata>emptyList());
+  }
+
+  @Benchmark
+  public int checkCachedChecksums() throws IOException {
+    ScriptInventory inventory = ScriptInventory.scan(this.scriptsDir, ChecksumCache.load(this.checksumCacheFile));
+    inventory.computeChecksums(this.state.getScripts(), this.threads);
+    return Migration.checkConsistency(inventory, this.state, Collections.<ScriptMetadata>emptyList());
+  }
+}
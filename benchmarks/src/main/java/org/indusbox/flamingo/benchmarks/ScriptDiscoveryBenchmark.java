@@ -0,0 +1,69 @@
+package org.indusbox.flamingo.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.indusbox.flamingo.scripts.ScriptFile;
+import org.indusbox.flamingo.scripts.ScriptInventory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lists synthetic scripts directories, with the file system cache warmed up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScriptDiscoveryBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  public int scripts;
+
+  private File scriptsDir;
+  private File manifestFile;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    this.scriptsDir = ScriptTrees.createTree(this.scripts);
+    this.manifestFile = File.createTempFile("flamingo-benchmark", ".inventory");
+    this.manifestFile.delete();
+    ScriptInventory.scan(this.scriptsDir, null, this.manifestFile);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ScriptTrees.delete(this.scriptsDir);
+    ScriptTrees.delete(this.manifestFile);
+  }
+
+  @Benchmark
+  public List<File> getScripts() throws IOException {
+    return ScriptFile.getScripts(this.scriptsDir);
+  }
+
+  @Benchmark
+  public ScriptInventory scanInventory() throws IOException {
+    return ScriptInventory.scan(this.scriptsDir);
+  }
+
+  @Benchmark
+  public ScriptInventory scanInventoryWithManifest() throws IOException {
+    return ScriptInventory.scan(this.scriptsDir, null, this.manifestFile);
+  }
+}
@@ -0,0 +1,82 @@
+package org.indusbox.flamingo.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Synthetic scripts directories for the benchmarks.
+ */
+final class ScriptTrees {
+
+  static final int SCRIPTS_PER_DIRECTORY = 100;
+
+  private ScriptTrees() {
+  }
+
+  /**
+   * Creates a scripts directory of small scripts, split in sub directories of {@value #SCRIPTS_PER_DIRECTORY} scripts.
+   */
+  static File createTree(int scripts) throws IOException {
+    File scriptsDir = Files.createTempDirectory("flamingo-benchmark").toFile();
+    for (int i = 0; i < scripts; i++) {
+      File directory = new File(scriptsDir, String.format("%05d_dir", i / SCRIPTS_PER_DIRECTORY));
+      if (i % SCRIPTS_PER_DIRECTORY == 0 && !directory.mkdir()) {
+        throw new IOException("Unable to create " + directory);
+      }
+      try (Writer writer = newWriter(new File(directory, String.format("%05d_script.json", i)))) {
+        writeAction(writer, i);
+      }
+    }
+    return scriptsDir;
+  }
+
+  /**
+   * Creates a single bulk script of about the given size, made of small index actions.
+   */
+  static File createScript(long bytes) throws IOException {
+    File script = Files.createTempFile("flamingo-benchmark", ".json").toFile();
+    try (Writer writer = newWriter(script)) {
+      long written = 0;
+      for (int i = 0; written < bytes; i++) {
+        written += writeAction(writer, i);
+      }
+    }
+    return script;
+  }
+
+  static void delete(File file) throws IOException {
+    Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static Writer newWriter(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8));
+  }
+
+  private static int writeAction(Writer writer, int id) throws IOException {
+    String action = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"" + id + "\" } }\n"
+        + "{ \"title\" : \"Book " + id + "\", \"summary\" : \"A synthetic book used to measure the migration of bulk scripts\" }\n";
+    writer.write(action);
+    return action.length();
+  }
+}
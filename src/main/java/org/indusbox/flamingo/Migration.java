@@ -10,20 +10,25 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 
-import org.indusbox.flamingo.scripts.ScriptFile;
+import org.indusbox.flamingo.metrics.Metrics;
+import org.indusbox.flamingo.scripts.ChecksumAlgorithm;
+import org.indusbox.flamingo.scripts.ChecksumCache;
+import org.indusbox.flamingo.scripts.MigrationLock;
+import org.indusbox.flamingo.scripts.MigrationState;
+import org.indusbox.flamingo.scripts.ScriptEntry;
+import org.indusbox.flamingo.scripts.ScriptInventory;
 import org.indusbox.flamingo.scripts.ScriptManager;
 import org.indusbox.flamingo.scripts.ScriptMetadata;
+import org.indusbox.flamingo.scripts.ScriptScheduler;
 import org.indusbox.flamingo.settings.ConfigurationLoader;
 import org.indusbox.flamingo.settings.FlamingoSettings;
-
-import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Migration {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(Migration.class);
+
   public static void main(String[] args) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException {
     Properties config = ConfigurationLoader.load();
     FlamingoSettings settings = FlamingoSettings.fromConfig(config);
@@ -31,123 +36,264 @@ public class Migration {
   }
 
   public static int migrate(FlamingoSettings settings) throws IOException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
-    ScriptManager scriptManager = new ScriptManager(settings);
+    try (ScriptManager scriptManager = new ScriptManager(settings)) {
+      return migrate(settings, scriptManager);
+    }
+  }
+
+  /**
+   * Applies the new scripts with the given script manager, which is left open to reuse its pooled connections in later migrations.
+   * Phases are timed in the script manager metrics, summarized at the end of the migration.
+   */
+  public static int migrate(FlamingoSettings settings, ScriptManager scriptManager) throws IOException {
+    Metrics metrics = scriptManager.getMetrics();
+    long start = System.nanoTime();
+    try {
+      return migrate(settings, scriptManager, metrics);
+    } finally {
+      metrics.recordSince("migration", start);
+      if (settings.isMetricsSummary() && LOGGER.isInfoEnabled()) {
+        LOGGER.info(metrics.getSummary());
+      }
+    }
+  }
+
+  private static int migrate(FlamingoSettings settings, ScriptManager scriptManager, Metrics metrics) throws IOException {
     final File scriptsDir = settings.getScriptsDir();
-    List<File> scripts = ScriptFile.getScripts(scriptsDir);
-    if (scripts.isEmpty()) {
-      System.out.println("No script, no migration");
+    long scanStart = System.nanoTime();
+    ChecksumCache checksumCache = null;
+    if (settings.isChecksumCache()) {
+      checksumCache = ChecksumCache.load(getChecksumCacheFile(settings));
+    }
+    ScriptInventory inventory = ScriptInventory.scan(scriptsDir, checksumCache, settings.getInventoryManifestFile());
+    metrics.recordSince("phase.scan", scanStart);
+    if (inventory.isEmpty()) {
+      LOGGER.info("No script, no migration");
       System.exit(0);
       return 0;
-    } else {
-      if (!scriptManager.indexFlamingoExists()) {
-        System.out.println("Index doesn't exist, creating index");
-        if (!scriptManager.createFlamingoIndex()) {
-          throw new RuntimeException("Error while creating index " + settings.getIndexName());
+    }
+    String fingerprint = null;
+    if (settings.isFingerprint()) {
+      // Every script has already been applied if the fingerprint of the latest complete migration matches, nothing else to check
+      long hashStart = System.nanoTime();
+      fingerprint = inventory.fingerprint(ChecksumAlgorithm.fromName(settings.getChecksumAlgorithm()), settings.getChecksumThreads());
+      metrics.recordSince("phase.hash", hashStart);
+      if (fingerprint.equals(scriptManager.getFingerprint())) {
+        LOGGER.info("No new script to apply");
+        saveChecksumCache(checksumCache);
+        return 0;
+      }
+    }
+    try (MigrationLock lock = settings.isLock() ? acquireLock(settings, scriptManager, metrics) : null) {
+      int scriptsApplied;
+      try {
+        scriptsApplied = migrateScripts(settings, scriptManager, metrics, lock, inventory, checksumCache);
+      } finally {
+        // Buffered metadata must be written even if a script failed, before the lock is released, unless another migration holds it now
+        if (lock == null || !lock.isLost()) {
+          scriptManager.flush();
         }
       }
+      checkLock(lock);
+      if (fingerprint != null) {
+        scriptManager.writeFingerprint(fingerprint, inventory.size());
+        saveChecksumCache(checksumCache);
+      }
+      return scriptsApplied;
+    }
+  }
 
-      Long count = scriptManager.count();
-      if (count == 0) {
-        // No script were executed, starting migration from the beginning
-        for (File script : scripts) {
-          scriptManager.executeScript(script, scriptsDir);
-        }
-        return scripts.size();
-      }
-
-      List<ScriptMetadata> failScripts = handleFailedScripts(scriptManager, scriptsDir, scripts);
-
-      // Check consistency (exists + checksum)
-      List<ScriptMetadata> scriptsMetadata = scriptManager.list(count);
-      List<File> remainingScript = new ArrayList<>(scripts);
-      int index = 0;
-      for (ScriptMetadata scriptMetadata : scriptsMetadata) {
-        final String scriptMetadataFilename = buildFilename(scriptsDir, scriptMetadata.getFileName());
-        final String checksum = scriptMetadata.getChecksum();
-        Optional<File> scriptFound = lookupScript(scriptMetadataFilename, scripts);
-        if (scriptFound.isPresent()) {
-          String currentChecksum = Files.hash(scriptFound.get(), Hashing.md5()).toString();
-          if (!Objects.equals(checksum, currentChecksum) && !failScripts.contains(scriptMetadata)) {
-            throw new IllegalStateException("Abort migration. Checksum is different for script " + scriptMetadataFilename + "!");
-          }
-          final File script = scripts.get(index);
-
-          if (!script.getCanonicalPath().equals(scriptMetadataFilename)) {
-            throw new IllegalStateException("A new script has been inserted before last successfully executed script (" + script.getCanonicalPath() + ")!");
-          }
-          remainingScript.remove(scriptFound.get());
-        } else {
-          throw new IllegalStateException("Abort migration. Script " + scriptMetadataFilename + " doesn't exist anymore!");
-        }
-        index++;
+  private static MigrationLock acquireLock(FlamingoSettings settings, ScriptManager scriptManager, Metrics metrics) throws IOException {
+    long start = System.nanoTime();
+    // The lock is stored in the metadata index, which must be created first with its mapping
+    if (!scriptManager.indexFlamingoExists()) {
+      LOGGER.info("Index doesn't exist, creating index");
+      if (!scriptManager.createFlamingoIndex()) {
+        throw new RuntimeException("Error while creating index " + settings.getIndexName());
       }
+    }
+    MigrationLock lock = scriptManager.acquireLock(settings.getLockLeaseTime(), settings.getLockWaitTimeout());
+    metrics.recordSince("phase.lock", start);
+    return lock;
+  }
+
+  /**
+   * @param lock
+   *         : Migration lock, checked before each script, may be null.
+   */
+  private static int migrateScripts(FlamingoSettings settings, ScriptManager scriptManager, Metrics metrics, MigrationLock lock,
+      ScriptInventory inventory, ChecksumCache checksumCache) throws IOException {
+    long stateLoadStart = System.nanoTime();
+    MigrationState state;
+    if (scriptManager.indexFlamingoExists()) {
+      // Load every executed script metadata at once, the migration is then checked against this snapshot
+      state = scriptManager.loadState();
+    } else {
+      LOGGER.info("Index doesn't exist, creating index");
+      if (!scriptManager.createFlamingoIndex()) {
+        throw new RuntimeException("Error while creating index " + settings.getIndexName());
+      }
+      state = MigrationState.empty();
+    }
+    metrics.recordSince("phase.stateLoad", stateLoadStart);
 
-      // everything's fine, let's update !
-      return processNewScripts(scriptManager, scriptsDir, remainingScript);
+    if (state.isEmpty()) {
+      // No script were executed, starting migration from the beginning
+      return executeScripts(scriptManager, settings, metrics, lock, inventory.getScripts());
     }
+
+    List<ScriptMetadata> failScripts = handleFailedScripts(scriptManager, lock, state, inventory);
+
+    // Hash the executed scripts in parallel, checksums are then compared in order
+    long hashStart = System.nanoTime();
+    inventory.computeChecksums(state.getScripts(), settings.getChecksumThreads());
+    metrics.recordSince("phase.hash", hashStart);
+    long verifyStart = System.nanoTime();
+    int index = checkConsistency(inventory, state, failScripts);
+    metrics.recordSince("phase.verify", verifyStart);
+    saveChecksumCache(checksumCache);
+
+    // everything's fine, let's update !
+    List<ScriptEntry> scripts = inventory.getScripts();
+    return processNewScripts(scriptManager, settings, metrics, lock, state, scripts.subList(Math.min(index, scripts.size()), scripts.size()));
   }
 
-  private static Integer getIndex(final String filename, List<ScriptMetadata> scriptMetadatas, final File scriptDir) {
-    return Iterables.indexOf(scriptMetadatas, new Predicate<ScriptMetadata>() {
-      @Override
-      public boolean apply(ScriptMetadata input) {
-        return filename.equals(buildFilename(scriptDir, input.getFileName()));
+  /**
+   * Checks that the executed scripts still exist, unchanged, and are the first scripts of the inventory, in the same order.
+   * Scripts executed concurrently may have been recorded after a failed script, with gaps: they are only checked to exist, unchanged.
+   * Checksums not computed beforehand, see {@link ScriptInventory#computeChecksums(List, int)}, are computed one script at a time.
+   *
+   * @param failScripts
+   *         : Failed scripts, which may have been modified since.
+   * @return The number of executed scripts up to the failed one, the next scripts of the inventory are new or already executed.
+   */
+  public static int checkConsistency(ScriptInventory inventory, MigrationState state, List<ScriptMetadata> failScripts) throws IOException {
+    final File scriptsDir = inventory.getScriptsDir();
+    List<ScriptEntry> scripts = inventory.getScripts();
+    int index = 0;
+    boolean ordered = true;
+    for (ScriptMetadata scriptMetadata : state.getScripts()) {
+      final String scriptMetadataFilename = buildFilename(scriptsDir, scriptMetadata.getFileName());
+      ScriptEntry scriptFound = inventory.getScript(scriptMetadata.getFileName());
+      if (scriptFound == null) {
+        throw new IllegalStateException("Abort migration. Script " + scriptMetadataFilename + " doesn't exist anymore!");
+      }
+      String currentChecksum = scriptFound.getChecksum(ChecksumAlgorithm.fromName(scriptMetadata.getChecksumAlgorithm()));
+      if (!Objects.equals(scriptMetadata.getChecksum(), currentChecksum) && !failScripts.contains(scriptMetadata)) {
+        throw new IllegalStateException("Abort migration. Checksum is different for script " + scriptMetadataFilename + "!");
       }
-    });
+      if (!ordered) {
+        continue;
+      }
+      final ScriptEntry script = index < scripts.size() ? scripts.get(index) : scriptFound;
+      if (script != scriptFound) {
+        throw new IllegalStateException("A new script has been inserted before last successfully executed script (" + script.getFile().getPath() + ")!");
+      }
+      index++;
+      ordered = scriptMetadata.isSucceeded();
+    }
+    return index;
   }
 
-  private static int processNewScripts(ScriptManager scriptManager, File scriptsDir, List<File> scripts) throws IOException {
+  private static int processNewScripts(ScriptManager scriptManager, FlamingoSettings settings, Metrics metrics, MigrationLock lock,
+      MigrationState state, List<ScriptEntry> scripts) throws IOException {
     if (scripts.isEmpty()) {
-      System.out.println("No new script to apply");
+      LOGGER.info("No new script to apply");
       return 0;
     }
     // Process remaining scripts
-    int result = 0;
-    for (File script : scripts) {
-      if (!scriptManager.scriptExists(script.getName())) {
-        scriptManager.executeScript(script, scriptsDir);
-        result++;
+    List<ScriptEntry> newScripts = new ArrayList<>(scripts.size());
+    for (ScriptEntry script : scripts) {
+      if (state.getScript(script.getName()) == null) {
+        newScripts.add(script);
       }
     }
-    return result;
+    return executeScripts(scriptManager, settings, metrics, lock, newScripts);
   }
 
-  private static List<ScriptMetadata> handleFailedScripts(ScriptManager scriptManager, File scriptsDir, List<File> scripts) throws IOException {
+  private static int executeScripts(ScriptManager scriptManager, FlamingoSettings settings, Metrics metrics, MigrationLock lock,
+      List<ScriptEntry> scripts) throws IOException {
+    long start = System.nanoTime();
+    try {
+      if (settings.getScriptConcurrency() > 1) {
+        return new ScriptScheduler(scriptManager, settings.getScriptsDir(), settings.getScriptConcurrency(), lock).execute(scripts);
+      }
+      for (ScriptEntry script : scripts) {
+        checkLock(lock);
+        scriptManager.executeScript(script.getFile(), settings.getScriptsDir());
+      }
+      return scripts.size();
+    } finally {
+      metrics.recordSince("phase.execute", start);
+    }
+  }
+
+  private static List<ScriptMetadata> handleFailedScripts(ScriptManager scriptManager, MigrationLock lock, MigrationState state, ScriptInventory inventory)
+      throws IOException {
     // No more than one fail script
-    List<ScriptMetadata> failScripts = scriptManager.getFailScripts();
+    List<ScriptMetadata> failScripts = state.getFailedScripts();
     if (failScripts.size() > 1) {
       throw new IllegalStateException("Abort migration. More than one failed script!");
     }
     // handle failed scripts
     if (!failScripts.isEmpty()) {
       ScriptMetadata failScript = failScripts.get(0);
-      ScriptMetadata latestScript = scriptManager.getLatestScript();
-      String id = failScript.getId();
-      if (!Objects.equals(id, latestScript.getId())) {
+      if (!isLatestScript(state, failScript)) {
         throw new IllegalStateException("Abort migration. Fail script must be the latest script!");
       }
-      final String fileName = buildFilename(scriptsDir, failScript.getFileName());
+      final String fileName = buildFilename(inventory.getScriptsDir(), failScript.getFileName());
+      ScriptEntry script = inventory.getScript(failScript.getFileName());
+      if (script == null) {
+        throw new IllegalStateException("Abort migration. Script " + fileName + " doesn't exist anymore!");
+      }
       // Retry failed script
-      System.out.println("Retrying failed script " + fileName);
-      File script = lookupScript(fileName, scripts).get();
-      scriptManager.updateScript(script, scriptsDir, id);
+      checkLock(lock);
+      LOGGER.info("Retrying failed script {}", fileName);
+      scriptManager.updateScript(script.getFile(), inventory.getScriptsDir(), failScript);
     }
     return failScripts;
   }
 
-  private static Optional<File> lookupScript(final String filename, final List<File> scripts) {
-    return Iterables.tryFind(scripts, new Predicate<File>() {
-      @Override
-      public boolean apply(File input) {
-        try {
-          return filename.equals(input.getCanonicalPath());
-        } catch (IOException e) {
-          System.err.println("Error during filename comparison :");
-          e.printStackTrace();
-          return false;
-        }
+  /**
+   * @return true if no script before the failed one has been executed after it. Scripts after it may have been executed concurrently.
+   */
+  private static boolean isLatestScript(MigrationState state, ScriptMetadata failScript) {
+    for (ScriptMetadata script : state.getScripts()) {
+      if (Objects.equals(script.getId(), failScript.getId())) {
+        return true;
+      }
+      if (script.getExecutedDate().isAfter(failScript.getExecutedDate())) {
+        return false;
       }
-    });
+    }
+    return true;
+  }
+
+  private static void checkLock(MigrationLock lock) {
+    if (lock != null) {
+      lock.check();
+    }
+  }
+
+  /**
+   * @return The configured checksum cache, or by default a cache next to the inventory manifest, or in the working directory.
+   * It is never in the scripts directory, whose modification time would change on every save and defeat the inventory manifest.
+   */
+  private static File getChecksumCacheFile(FlamingoSettings settings) {
+    if (settings.getChecksumCacheFile() != null) {
+      return settings.getChecksumCacheFile();
+    }
+    File inventoryManifestFile = settings.getInventoryManifestFile();
+    if (inventoryManifestFile != null) {
+      return new File(inventoryManifestFile.getAbsoluteFile().getParentFile(), ChecksumCache.DEFAULT_FILE_NAME);
+    }
+    return new File(ChecksumCache.DEFAULT_FILE_NAME);
+  }
+
+  private static void saveChecksumCache(ChecksumCache checksumCache) {
+    if (checksumCache != null) {
+      checksumCache.save();
+    }
   }
 
   private static String buildFilename(File scriptsDir, String scriptName) {
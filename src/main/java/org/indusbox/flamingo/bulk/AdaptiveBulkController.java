@@ -0,0 +1,91 @@
+package org.indusbox.flamingo.bulk;
+
+import org.indusbox.flamingo.settings.FlamingoSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the chunk size and the concurrency of bulk requests with an AIMD (additive increase, multiplicative decrease) feedback loop.
+ * Both grow step by step while responses come back under the target latency without rejection, and are halved otherwise.
+ * When adaptive sizing is disabled, the configured maximums are used as is.
+ */
+public class AdaptiveBulkController {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveBulkController.class);
+
+  private static final int SIZE_STEPS = 16;
+
+  private final boolean enabled;
+  private final long minChunkBytes;
+  private final long maxChunkBytes;
+  private final int maxConcurrency;
+  private final long targetLatency;
+  private long chunkBytes;
+  private int concurrency;
+
+  public AdaptiveBulkController(FlamingoSettings settings) {
+    this.enabled = settings.isBulkAdaptive();
+    this.maxChunkBytes = settings.getBulkMaxBytes();
+    this.minChunkBytes = Math.max(this.maxChunkBytes / SIZE_STEPS, 1);
+    this.maxConcurrency = Math.max(settings.getBulkConcurrency(), 1);
+    this.targetLatency = settings.getBulkTargetLatency();
+    // Start small and let the feedback loop find what the cluster sustains
+    this.chunkBytes = this.enabled ? Math.max(this.maxChunkBytes / 4, this.minChunkBytes) : this.maxChunkBytes;
+    this.concurrency = this.enabled ? 1 : this.maxConcurrency;
+  }
+
+  public synchronized long getChunkBytes() {
+    return chunkBytes;
+  }
+
+  public synchronized int getConcurrency() {
+    return concurrency;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * @param bytes
+   *         : Size of the sent request.
+   * @param items
+   *         : Number of actions in the request.
+   * @param rejectedItems
+   *         : Number of actions rejected by an overloaded cluster.
+   * @param latency
+   *         : Round-trip time of the request, in milliseconds.
+   * @param took
+   *         : Time spent by Elasticsearch to process the request, in milliseconds.
+   */
+  public synchronized void onResponse(long bytes, int items, int rejectedItems, long latency, long took) {
+    if (!this.enabled) {
+      return;
+    }
+    long previousChunkBytes = this.chunkBytes;
+    int previousConcurrency = this.concurrency;
+    String reason;
+    if (rejectedItems > 0) {
+      // The cluster is saturated, back off on both axes
+      this.chunkBytes = Math.max(this.chunkBytes / 2, this.minChunkBytes);
+      this.concurrency = Math.max(this.concurrency / 2, 1);
+      reason = rejectedItems + "/" + items + " items rejected";
+    } else if (Math.max(latency, took) > this.targetLatency) {
+      this.chunkBytes = Math.max(this.chunkBytes / 2, this.minChunkBytes);
+      reason = "latency above " + this.targetLatency + "ms";
+    } else if (this.chunkBytes < this.maxChunkBytes) {
+      this.chunkBytes = Math.min(this.chunkBytes + this.minChunkBytes, this.maxChunkBytes);
+      reason = "latency under " + this.targetLatency + "ms";
+    } else {
+      // Requests are as big as allowed, add more of them
+      this.concurrency = Math.min(this.concurrency + 1, this.maxConcurrency);
+      reason = "latency under " + this.targetLatency + "ms";
+    }
+    if (this.chunkBytes != previousChunkBytes || this.concurrency != previousConcurrency) {
+      // Estimated from the last request, as if every request in flight performed the same
+      long throughput = bytes * 1000 * previousConcurrency / Math.max(latency, 1);
+      LOGGER.info("adaptiveBulk, chunkBytes: {}, concurrency: {} ({}, latency: {}ms, took: {}ms, throughput: {} bytes/s)",
+          this.chunkBytes, this.concurrency, reason, latency, took, throughput);
+    }
+  }
+}
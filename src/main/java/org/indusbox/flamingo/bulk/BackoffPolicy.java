@@ -0,0 +1,38 @@
+package org.indusbox.flamingo.bulk;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter, bounded by a number of retries and a total backoff time.
+ */
+public class BackoffPolicy {
+
+  private static final long INITIAL_DELAY = 100;
+
+  private final int maxRetries;
+  private final long maxTotalBackoff;
+  private final Random random = new Random();
+
+  public BackoffPolicy(int maxRetries, long maxTotalBackoff) {
+    this.maxRetries = maxRetries;
+    this.maxTotalBackoff = maxTotalBackoff;
+  }
+
+  /**
+   * @param retry
+   *         : Retry number, starting at 0.
+   * @param totalBackoff
+   *         : Time already spent waiting for the previous retries, in milliseconds.
+   * @return The delay to wait before the given retry in milliseconds, or -1 if no more retry is allowed.
+   */
+  public long delay(int retry, long totalBackoff) {
+    long remaining = this.maxTotalBackoff - totalBackoff;
+    if (retry >= this.maxRetries || remaining <= 0) {
+      return -1;
+    }
+    long exponential = INITIAL_DELAY << Math.min(retry, 30);
+    // Half of the delay is fixed, the other half is random to spread the retries of concurrent chunks
+    long delay = exponential / 2 + (long) (this.random.nextDouble() * (exponential / 2));
+    return Math.min(delay, remaining);
+  }
+}
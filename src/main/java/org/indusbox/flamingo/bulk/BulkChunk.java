@@ -0,0 +1,115 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * A slice of a bulk script made of complete actions (action line plus optional source line), ready to be sent to the _bulk endpoint.
+ */
+public class BulkChunk extends ByteArrayOutputStream {
+
+  private int actionCount;
+  private int[] actionOffsets = new int[16];
+  private long sequence;
+  private BulkProgress progress;
+
+  public BulkChunk(int initialCapacity) {
+    super(initialCapacity);
+  }
+
+  public int getActionCount() {
+    return actionCount;
+  }
+
+  /**
+   * @return Position of this chunk in the script, starting at 0.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return Progress in the script once this chunk and all the previous ones are acknowledged.
+   */
+  public BulkProgress getProgress() {
+    return progress;
+  }
+
+  void setPosition(long sequence, BulkProgress progress) {
+    this.sequence = sequence;
+    this.progress = progress;
+  }
+
+  public ByteArrayEntity toEntity() {
+    return new ByteArrayEntity(this.buf, 0, this.count, ContentType.APPLICATION_JSON);
+  }
+
+  /**
+   * @return A new chunk made of the actions at the given positions, in order.
+   */
+  public BulkChunk subChunk(List<Integer> positions) {
+    BulkChunk subChunk = new BulkChunk(32);
+    for (Integer position : positions) {
+      int start = this.actionOffsets[position];
+      int end = position + 1 < this.actionCount ? this.actionOffsets[position + 1] : this.count;
+      subChunk.addAction(this.buf, start, end - start);
+    }
+    return subChunk;
+  }
+
+  void addAction(int offset) {
+    if (this.actionCount == this.actionOffsets.length) {
+      this.actionOffsets = Arrays.copyOf(this.actionOffsets, this.actionCount * 2);
+    }
+    this.actionOffsets[this.actionCount++] = offset;
+  }
+
+  private void addAction(byte[] bytes, int offset, int length) {
+    addAction(this.count);
+    write(bytes, offset, length);
+  }
+
+  void truncate(int size) {
+    this.count = size;
+  }
+
+  /**
+   * Moves the last action, starting at the given position, to a new chunk.
+   */
+  BulkChunk splitLastAction(int position) {
+    BulkChunk tail = new BulkChunk(Math.max(this.count - position, 32));
+    tail.addAction(this.buf, position, this.count - position);
+    this.count = position;
+    this.actionCount--;
+    return tail;
+  }
+
+  /**
+   * @return the name of the action ("index", "create", "update" or "delete") of the action line starting at the given position.
+   */
+  String actionName(int position) {
+    int nameStart = -1;
+    for (int i = position; i < this.count && this.buf[i] != '\n'; i++) {
+      if (this.buf[i] == '"') {
+        if (nameStart >= 0) {
+          return new String(this.buf, nameStart, i - nameStart, StandardCharsets.UTF_8);
+        }
+        nameStart = i + 1;
+      }
+    }
+    return null;
+  }
+
+  String line(int position) {
+    int end = position;
+    while (end < this.count && this.buf[end] != '\n') {
+      end++;
+    }
+    return new String(this.buf, position, end - position, StandardCharsets.UTF_8);
+  }
+}
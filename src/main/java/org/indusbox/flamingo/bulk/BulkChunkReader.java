@@ -0,0 +1,276 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
+
+/**
+ * Reads a bulk script (newline delimited JSON) incrementally and splits it into chunks bounded by action count and byte size.
+ * Only one chunk is held in memory at a time, and an action is never split from its source line.
+ * Each chunk carries the {@link BulkProgress} reached at its end, to checkpoint and resume the script execution.
+ * A script can also be read from any {@link ByteSource}, e.g. a compressed script decompressed on the fly.
+ */
+public class BulkChunkReader implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkChunkReader.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int PREFIX_BUFFER_SIZE = 1024 * 1024;
+
+  private final InputStream in;
+  private final int maxActions;
+  private long maxBytes;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private BulkChunk pending;
+  private long sequence;
+  // Raw bytes and lines consumed from the stream, blank lines included
+  private final MessageDigest digest;
+  private long offset;
+  private long line;
+  private BulkProgress resumedFrom;
+
+  public BulkChunkReader(InputStream in, int maxActions, long maxBytes) {
+    this(in, maxActions, maxBytes, newDigest(), 0, 0);
+  }
+
+  private BulkChunkReader(InputStream in, int maxActions, long maxBytes, MessageDigest digest, long offset, long line) {
+    this.in = in;
+    this.maxActions = maxActions;
+    this.maxBytes = maxBytes;
+    this.digest = digest;
+    this.offset = offset;
+    this.line = line;
+  }
+
+  /**
+   * Opens a script, directly positioned after the given progress if the script is unchanged up to this point.
+   * Otherwise, the script is read from the beginning.
+   *
+   * @param resumeFrom
+   *         : Progress of a previous execution, may be null.
+   */
+  public static BulkChunkReader open(File script, int maxActions, long maxBytes, BulkProgress resumeFrom) throws IOException {
+    FileInputStream in = new FileInputStream(script);
+    if (resumeFrom == null || resumeFrom.getOffset() == 0) {
+      return new BulkChunkReader(in, maxActions, maxBytes);
+    }
+    try {
+      MessageDigest digest = newDigest();
+      if (hashPrefix(in, resumeFrom.getOffset(), digest) && Objects.equals(checksum(digest), resumeFrom.getChecksum())) {
+        LOGGER.info("Resuming script {} at {}", script.getName(), resumeFrom);
+        BulkChunkReader reader = new BulkChunkReader(in, maxActions, maxBytes, digest, resumeFrom.getOffset(), resumeFrom.getLine());
+        reader.resumedFrom = resumeFrom;
+        return reader;
+      }
+      LOGGER.warn("Script {} has changed before {}, executing it from the beginning", script.getName(), resumeFrom);
+      in.getChannel().position(0);
+      return new BulkChunkReader(in, maxActions, maxBytes);
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens a script read from a stream, positioned after the given progress if the script content is unchanged up to this point.
+   * Otherwise, the script is read again from the beginning.
+   *
+   * @param scriptName
+   *         : Name of the script, for logging.
+   * @param resumeFrom
+   *         : Progress of a previous execution, in bytes of the streamed content. May be null.
+   */
+  public static BulkChunkReader open(String scriptName, ByteSource script, int maxActions, long maxBytes, BulkProgress resumeFrom) throws IOException {
+    InputStream in = script.openStream();
+    if (resumeFrom == null || resumeFrom.getOffset() == 0) {
+      return new BulkChunkReader(in, maxActions, maxBytes);
+    }
+    try {
+      MessageDigest digest = newDigest();
+      if (hashPrefix(in, resumeFrom.getOffset(), digest) && Objects.equals(checksum(digest), resumeFrom.getChecksum())) {
+        LOGGER.info("Resuming script {} at {}", scriptName, resumeFrom);
+        BulkChunkReader reader = new BulkChunkReader(in, maxActions, maxBytes, digest, resumeFrom.getOffset(), resumeFrom.getLine());
+        reader.resumedFrom = resumeFrom;
+        return reader;
+      }
+      LOGGER.warn("Script {} has changed before {}, executing it from the beginning", scriptName, resumeFrom);
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+    // A stream can't be rewound, read it again
+    in.close();
+    return new BulkChunkReader(script.openStream(), maxActions, maxBytes);
+  }
+
+  /**
+   * @return The progress this reader has been positioned after, or null if the script is read from the beginning.
+   */
+  public BulkProgress getResumedFrom() {
+    return resumedFrom;
+  }
+
+  /**
+   * Changes the maximum size of the next chunks.
+   */
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return The next chunk, or null if the whole script has been read.
+   */
+  public BulkChunk next() throws IOException {
+    BulkChunk chunk = this.pending;
+    this.pending = null;
+    if (chunk == null) {
+      chunk = new BulkChunk((int) Math.min(this.maxBytes, BUFFER_SIZE));
+    }
+    BulkProgress progress = null;
+    while (chunk.getActionCount() < this.maxActions) {
+      int actionStart = chunk.size();
+      MessageDigest actionStartDigest = cloneDigest(this.digest);
+      long actionStartOffset = this.offset;
+      long actionStartLine = this.line;
+      if (!readAction(chunk)) {
+        break;
+      }
+      if (chunk.size() > this.maxBytes && chunk.getActionCount() > 1) {
+        // Action doesn't fit, keep it for the next chunk
+        this.pending = chunk.splitLastAction(actionStart);
+        progress = new BulkProgress(actionStartOffset, actionStartLine, checksum(actionStartDigest));
+        break;
+      }
+    }
+    if (chunk.getActionCount() == 0) {
+      return null;
+    }
+    if (progress == null) {
+      progress = new BulkProgress(this.offset, this.line, checksum(cloneDigest(this.digest)));
+    }
+    chunk.setPosition(this.sequence++, progress);
+    return chunk;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+
+  private boolean readAction(BulkChunk chunk) throws IOException {
+    int actionStart = chunk.size();
+    if (!readLine(chunk)) {
+      return false;
+    }
+    // Every action but delete is followed by a source line
+    if (!"delete".equals(chunk.actionName(actionStart)) && !readLine(chunk)) {
+      throw new IllegalStateException("Invalid bulk script, missing source line after " + chunk.line(actionStart));
+    }
+    chunk.addAction(actionStart);
+    return true;
+  }
+
+  /**
+   * Appends the next non blank line to the chunk, always terminated by a '\n'.
+   *
+   * @return false if the end of the stream has been reached.
+   */
+  private boolean readLine(BulkChunk chunk) throws IOException {
+    int lineStart = chunk.size();
+    boolean blank = true;
+    while (true) {
+      if (this.position == this.limit && !fill()) {
+        if (blank) {
+          chunk.truncate(lineStart);
+          return false;
+        }
+        chunk.write('\n');
+        this.line++;
+        return true;
+      }
+      int start = this.position;
+      while (this.position < this.limit && this.buffer[this.position] != '\n') {
+        if (blank && !isWhitespace(this.buffer[this.position])) {
+          blank = false;
+        }
+        this.position++;
+      }
+      boolean endOfLine = this.position < this.limit;
+      if (endOfLine) {
+        this.position++;
+        this.line++;
+      }
+      chunk.write(this.buffer, start, this.position - start);
+      this.digest.update(this.buffer, start, this.position - start);
+      this.offset += this.position - start;
+      if (endOfLine) {
+        if (!blank) {
+          return true;
+        }
+        // skip blank lines
+        chunk.truncate(lineStart);
+      }
+    }
+  }
+
+  private boolean fill() throws IOException {
+    int read = this.in.read(this.buffer);
+    if (read < 0) {
+      return false;
+    }
+    this.position = 0;
+    this.limit = read;
+    return true;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  private static boolean hashPrefix(InputStream in, long length, MessageDigest digest) throws IOException {
+    byte[] prefixBuffer = new byte[(int) Math.min(length, PREFIX_BUFFER_SIZE)];
+    long remaining = length;
+    while (remaining > 0) {
+      int read = in.read(prefixBuffer, 0, (int) Math.min(remaining, prefixBuffer.length));
+      if (read < 0) {
+        return false;
+      }
+      digest.update(prefixBuffer, 0, read);
+      remaining -= read;
+    }
+    return true;
+  }
+
+  private static String checksum(MessageDigest digest) {
+    return HashCode.fromBytes(digest.digest()).toString();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+
+  private static MessageDigest cloneDigest(MessageDigest digest) {
+    try {
+      return (MessageDigest) digest.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException("Unable to clone " + digest.getAlgorithm() + " digest", e);
+    }
+  }
+}
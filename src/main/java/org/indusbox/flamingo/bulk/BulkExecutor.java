@@ -0,0 +1,266 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.indusbox.flamingo.metrics.Metrics;
+import org.indusbox.flamingo.settings.FlamingoSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Sends the chunks of a bulk script to the _bulk endpoint.
+ * With a concurrency greater than 1, several chunks are in flight at once and the script reader is blocked while the limit is reached.
+ * Chunks are then applied in no particular order, so scripts must not depend on the order of their actions across chunks.
+ * Chunk size and concurrency are chosen by an {@link AdaptiveBulkController}.
+ */
+public class BulkExecutor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkExecutor.class);
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setNameFormat("flamingo-bulk-%d")
+      .setDaemon(true)
+      .build();
+
+  private static final int MAX_ERROR_REASONS = 10;
+
+  private final CloseableHttpClient client;
+  private final String bulkUri;
+  private final AdaptiveBulkController controller;
+  private final BackoffPolicy backoffPolicy;
+  private final long checkpointInterval;
+  private final boolean compression;
+  private final int compressionLevel;
+  private final Metrics metrics;
+
+  public BulkExecutor(CloseableHttpClient client, String uri, FlamingoSettings settings) {
+    this(client, uri, settings, new Metrics(null));
+  }
+
+  /**
+   * @param metrics
+   *         : Metrics the bulk requests are recorded in.
+   */
+  public BulkExecutor(CloseableHttpClient client, String uri, FlamingoSettings settings, Metrics metrics) {
+    this.client = client;
+    this.bulkUri = uri + "/_bulk" + RefreshPolicy.fromName(settings.getRefreshPolicy()).getParameter();
+    this.controller = new AdaptiveBulkController(settings);
+    this.backoffPolicy = new BackoffPolicy(settings.getBulkMaxRetries(), settings.getBulkMaxTotalBackoff());
+    this.checkpointInterval = settings.getBulkCheckpointInterval();
+    this.compression = settings.isCompression();
+    this.compressionLevel = settings.getCompressionLevel();
+    this.metrics = metrics;
+  }
+
+  public BulkResult execute(BulkChunkReader reader) throws IOException {
+    return execute(reader, null);
+  }
+
+  /**
+   * @param checkpointListener
+   *         : Listener notified, at most once per checkpoint interval, of the progress acknowledged by Elasticsearch. May be null.
+   * @return The aggregated result of the sent chunks, with the acknowledged progress. Once a chunk has failed items, remaining chunks are not sent.
+   */
+  public BulkResult execute(BulkChunkReader reader, CheckpointListener checkpointListener) throws IOException {
+    CheckpointTracker tracker = new CheckpointTracker(checkpointListener, this.checkpointInterval);
+    BulkResult result;
+    if (this.controller.getMaxConcurrency() <= 1) {
+      result = new BulkResult(MAX_ERROR_REASONS);
+      BulkChunk chunk;
+      while (result.isSucceeded() && (chunk = nextChunk(reader)) != null) {
+        BulkResult chunkResult = send(chunk);
+        result.merge(chunkResult);
+        if (chunkResult.isSucceeded()) {
+          tracker.complete(chunk);
+        }
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(this.controller.getMaxConcurrency(), THREAD_FACTORY);
+      try {
+        result = executeConcurrently(reader, executor, tracker);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+    BulkProgress progress = tracker.getProgress();
+    result.setProgress(progress != null ? progress : reader.getResumedFrom());
+    return result;
+  }
+
+  private BulkResult executeConcurrently(BulkChunkReader reader, ExecutorService executor, final CheckpointTracker tracker) throws IOException {
+    final InFlightLimiter inFlight = new InFlightLimiter(this.controller);
+    final BulkResult result = new BulkResult(MAX_ERROR_REASONS);
+    final AtomicBoolean succeeded = new AtomicBoolean(true);
+    final AtomicReference<Exception> error = new AtomicReference<>();
+    try {
+      while (succeeded.get()) {
+        // Back-pressure, wait for a slot before reading the next chunk
+        inFlight.acquire();
+        if (!succeeded.get()) {
+          // A chunk has failed while waiting for the slot
+          inFlight.release();
+          break;
+        }
+        final BulkChunk chunk;
+        try {
+          chunk = nextChunk(reader);
+        } catch (IOException | RuntimeException e) {
+          inFlight.release();
+          throw e;
+        }
+        if (chunk == null) {
+          inFlight.release();
+          break;
+        }
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              BulkResult chunkResult = send(chunk);
+              result.merge(chunkResult);
+              if (chunkResult.isSucceeded()) {
+                tracker.complete(chunk);
+              } else {
+                succeeded.set(false);
+              }
+            } catch (IOException | RuntimeException e) {
+              error.compareAndSet(null, e);
+              succeeded.set(false);
+            } finally {
+              inFlight.release();
+            }
+          }
+        });
+      }
+      // Wait for the chunks still in flight
+      inFlight.awaitAll();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while executing bulk");
+    }
+    Exception exception = error.get();
+    if (exception instanceof IOException) {
+      throw (IOException) exception;
+    }
+    if (exception != null) {
+      throw (RuntimeException) exception;
+    }
+    return result;
+  }
+
+  private BulkChunk nextChunk(BulkChunkReader reader) throws IOException {
+    reader.setMaxBytes(this.controller.getChunkBytes());
+    return reader.next();
+  }
+
+  /**
+   * Sends the chunk, then sends again the items rejected by an overloaded cluster until the backoff policy gives up.
+   */
+  private BulkResult send(BulkChunk chunk) throws IOException {
+    // Documents are counted once, retried items are only counted in bulk.requests and bulk.rejectedItems
+    this.metrics.increment("bulk.docs", chunk.getActionCount());
+    BulkResult result = new BulkResult(MAX_ERROR_REASONS);
+    BulkChunk pending = chunk;
+    long totalBackoff = 0;
+    for (int retry = 0; ; retry++) {
+      BulkResult attempt = sendOnce(pending);
+      List<Integer> rejectedItems = attempt.getRejectedItems();
+      if (!rejectedItems.isEmpty()) {
+        long delay = this.backoffPolicy.delay(retry, totalBackoff);
+        if (delay >= 0) {
+          LOGGER.info("executeBulk, retrying {} rejected items in {}ms", rejectedItems.size(), delay);
+          pending = pending.subChunk(rejectedItems);
+          attempt.addRetriedItems(rejectedItems.size());
+          this.metrics.increment("bulk.retriedItems", rejectedItems.size());
+          result.merge(attempt);
+          sleep(delay);
+          totalBackoff += delay;
+          continue;
+        }
+        attempt.failRejectedItems();
+      }
+      result.merge(attempt);
+      return result;
+    }
+  }
+
+  private BulkResult sendOnce(BulkChunk chunk) throws IOException {
+    HttpPost request = new HttpPost(this.bulkUri);
+    if (this.compression) {
+      request.setEntity(new GzipCompressedEntity(chunk.toEntity(), this.compressionLevel));
+    } else {
+      request.setEntity(chunk.toEntity());
+    }
+    long start = System.nanoTime();
+    try (CloseableHttpResponse execute = this.client.execute(request)) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      BulkResult result = parseResponse(execute.getEntity(), statusCode, chunk);
+      long latencyNanos = System.nanoTime() - start;
+      long latency = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+      LOGGER.debug("executeBulk, statusCode: {}, {}", statusCode, result);
+      if (result.getFailedItems() > 0) {
+        LOGGER.debug("executeBulk, errors: {}", result.getErrorReasons());
+      }
+      this.controller.onResponse(chunk.size(), chunk.getActionCount(), result.getRejectedItems().size(), latency, result.getTook());
+      this.metrics.record("bulk.latency", latencyNanos);
+      this.metrics.increment("bulk.requests", 1);
+      this.metrics.increment("bulk.bytes", chunk.size());
+      this.metrics.increment("bulk.failedItems", result.getFailedItems());
+      this.metrics.increment("bulk.rejectedItems", result.getRejectedItems().size());
+      return result;
+    }
+  }
+
+  private BulkResult parseResponse(HttpEntity entity, int statusCode, BulkChunk chunk) throws IOException {
+    try {
+      if (statusCode == 200) {
+        return BulkResponseParser.parse(entity.getContent(), MAX_ERROR_REASONS);
+      }
+      // The whole request has been rejected
+      BulkResult result;
+      String reason = "Unexpected response, statusCode: " + statusCode;
+      try {
+        result = BulkResponseParser.parse(entity.getContent(), MAX_ERROR_REASONS);
+      } catch (IOException e) {
+        // Empty or not a bulk response, e.g. returned by a proxy
+        result = new BulkResult(MAX_ERROR_REASONS);
+        result.addErrorReason(reason);
+      }
+      if (BulkResult.isRejection(statusCode)) {
+        for (int position = 0; position < chunk.getActionCount(); position++) {
+          result.addRejectedItem(position, statusCode, reason);
+        }
+      } else {
+        result.addActions(chunk.getActionCount());
+        result.addFailures(statusCode, chunk.getActionCount());
+      }
+      return result;
+    } finally {
+      EntityUtils.consume(entity);
+    }
+  }
+
+  private static void sleep(long delay) throws InterruptedIOException {
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry bulk");
+    }
+  }
+}
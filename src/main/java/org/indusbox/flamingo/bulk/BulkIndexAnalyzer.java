@@ -0,0 +1,115 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Lists the indices a bulk script writes to, from the _index of its action lines.
+ * The script is scanned as bytes: source lines are skipped without being decoded nor parsed, only action lines are parsed.
+ */
+public final class BulkIndexAnalyzer {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Set<String> indices = new HashSet<>();
+  private final ByteArrayOutputStream actionLine = new ByteArrayOutputStream(256);
+  private boolean sourceLine;
+  private boolean blank = true;
+
+  private BulkIndexAnalyzer() {
+  }
+
+  /**
+   * @param script
+   *         : Bulk script content, left open.
+   * @return The indices written by the script, or null if an action has no _index: the indices it writes to are then unknown.
+   */
+  public static Set<String> indices(InputStream script) throws IOException {
+    BulkIndexAnalyzer analyzer = new BulkIndexAnalyzer();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = script.read(buffer)) >= 0) {
+      int lineStart = 0;
+      for (int i = 0; i < read; i++) {
+        byte b = buffer[i];
+        if (b == '\n') {
+          analyzer.append(buffer, lineStart, i - lineStart);
+          if (!analyzer.endLine()) {
+            return null;
+          }
+          lineStart = i + 1;
+        } else if (analyzer.blank && (b & 0xff) > ' ') {
+          analyzer.blank = false;
+        }
+      }
+      analyzer.append(buffer, lineStart, read - lineStart);
+    }
+    return analyzer.endLine() ? analyzer.indices : null;
+  }
+
+  private void append(byte[] buffer, int offset, int length) {
+    // Source lines are not kept
+    if (!this.sourceLine) {
+      this.actionLine.write(buffer, offset, length);
+    }
+  }
+
+  /**
+   * @return false if the action of the line has no _index.
+   */
+  private boolean endLine() throws IOException {
+    try {
+      if (this.blank) {
+        return true;
+      }
+      if (this.sourceLine) {
+        this.sourceLine = false;
+        return true;
+      }
+      return parseAction(this.actionLine.toByteArray());
+    } finally {
+      this.actionLine.reset();
+      this.blank = true;
+    }
+  }
+
+  private boolean parseAction(byte[] line) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(line)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+        throw new IllegalStateException("Invalid bulk script, action expected: " + new String(line, StandardCharsets.UTF_8).trim());
+      }
+      String action = parser.getCurrentName();
+      String index = parser.nextToken() == JsonToken.START_OBJECT ? parseIndex(parser) : null;
+      if (index == null) {
+        return false;
+      }
+      this.indices.add(index);
+      // Every action but delete is followed by a source line
+      this.sourceLine = !"delete".equals(action);
+      return true;
+    }
+  }
+
+  private static String parseIndex(JsonParser parser) throws IOException {
+    String index = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("_index".equals(field)) {
+        index = parser.getText();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return index;
+  }
+}
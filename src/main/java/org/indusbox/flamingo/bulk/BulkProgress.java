@@ -0,0 +1,42 @@
+package org.indusbox.flamingo.bulk;
+
+/**
+ * Position in a bulk script up to which every action has been acknowledged by Elasticsearch.
+ */
+public class BulkProgress {
+
+  private final long offset;
+  private final long line;
+  private final String checksum;
+
+  /**
+   * @param offset
+   *         : Number of bytes of the script processed.
+   * @param line
+   *         : Number of lines of the script processed.
+   * @param checksum
+   *         : MD5 checksum of the processed bytes.
+   */
+  public BulkProgress(long offset, long line, String checksum) {
+    this.offset = offset;
+    this.line = line;
+    this.checksum = checksum;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getLine() {
+    return line;
+  }
+
+  public String getChecksum() {
+    return checksum;
+  }
+
+  @Override
+  public String toString() {
+    return "offset: " + offset + ", line: " + line;
+  }
+}
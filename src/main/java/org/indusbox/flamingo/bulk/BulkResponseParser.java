@@ -0,0 +1,129 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming parser of _bulk responses. Only the top-level errors flag and the failed items are read,
+ * successful items are skipped without being materialized.
+ */
+public final class BulkResponseParser {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private BulkResponseParser() {
+  }
+
+  /**
+   * @param content
+   *         : _bulk response body.
+   * @param maxErrorReasons
+   *         : Maximum number of error reasons to keep.
+   * @return Item level statistics. Items rejected with a 429 or 503 status are reported as rejected, not failed.
+   * A top-level error (whole request rejected) is kept as an error reason, without failure count.
+   */
+  public static BulkResult parse(InputStream content, int maxErrorReasons) throws IOException {
+    BulkResult result = new BulkResult(maxErrorReasons);
+    try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Unable to parse bulk response, JSON object expected");
+      }
+      boolean errors = true;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "took":
+            result.addTook(parser.getLongValue());
+            break;
+          case "errors":
+            errors = parser.getBooleanValue();
+            break;
+          case "items":
+            parseItems(parser, result, errors);
+            break;
+          case "error":
+            result.addErrorReason(readError(parser));
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void parseItems(JsonParser parser, BulkResult result, boolean errors) throws IOException {
+    if (!errors) {
+      // No failed item, only count them
+      long count = 0;
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        parser.skipChildren();
+        count++;
+      }
+      result.addActions(count);
+      return;
+    }
+    int position = 0;
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      // { "<action>" : { ..., "status" : 201, "error" : ... } }
+      parser.nextToken();
+      parser.nextToken();
+      parseItem(parser, result, position++);
+      parser.nextToken();
+    }
+  }
+
+  private static void parseItem(JsonParser parser, BulkResult result, int position) throws IOException {
+    int status = 0;
+    String error = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("status".equals(field)) {
+        status = parser.getIntValue();
+      } else if ("error".equals(field)) {
+        error = readError(parser);
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if (BulkResult.isRejection(status)) {
+      // Not a failure yet, the item can be retried
+      result.addRejectedItem(position, status, error);
+      return;
+    }
+    result.addActions(1);
+    if (error != null || status >= 300) {
+      result.addFailures(status, 1);
+      result.addErrorReason(error);
+    }
+  }
+
+  /**
+   * Reads an error, either a string (Elasticsearch 1.x) or an object with a type and a reason.
+   */
+  private static String readError(JsonParser parser) throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      return parser.getText();
+    }
+    String type = null;
+    String reason = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("type".equals(field)) {
+        type = parser.getText();
+      } else if ("reason".equals(field)) {
+        reason = parser.getText();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return type + ": " + reason;
+  }
+}
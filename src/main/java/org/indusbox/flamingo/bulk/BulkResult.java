@@ -0,0 +1,160 @@
+package org.indusbox.flamingo.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Item level statistics of one or many _bulk responses.
+ */
+public class BulkResult {
+
+  private final int maxErrorReasons;
+  private long actions;
+  private long failedItems;
+  private long took;
+  private final Map<Integer, Long> failuresByStatus = new TreeMap<>();
+  private final List<String> errorReasons = new ArrayList<>();
+  private long retriedItems;
+  private final List<Integer> rejectedItems = new ArrayList<>();
+  private final Map<Integer, Long> rejectionsByStatus = new TreeMap<>();
+  private String rejectionReason;
+  private BulkProgress progress;
+
+  public BulkResult(int maxErrorReasons) {
+    this.maxErrorReasons = maxErrorReasons;
+  }
+
+  public boolean isSucceeded() {
+    return this.failedItems == 0;
+  }
+
+  public long getActions() {
+    return actions;
+  }
+
+  public long getFailedItems() {
+    return failedItems;
+  }
+
+  /**
+   * @return Sum of the time (in milliseconds) spent by Elasticsearch on each bulk request.
+   */
+  public long getTook() {
+    return took;
+  }
+
+  /**
+   * @return Number of failed items, by HTTP status code.
+   */
+  public Map<Integer, Long> getFailuresByStatus() {
+    return Collections.unmodifiableMap(failuresByStatus);
+  }
+
+  /**
+   * @return The first error reasons, bounded by the maximum given at creation.
+   */
+  public List<String> getErrorReasons() {
+    return Collections.unmodifiableList(errorReasons);
+  }
+
+  /**
+   * @return Number of items sent again after being rejected.
+   */
+  public long getRetriedItems() {
+    return retriedItems;
+  }
+
+  /**
+   * @return Positions, in the sent chunk, of the items rejected because the cluster was overloaded. They can be sent again.
+   */
+  public List<Integer> getRejectedItems() {
+    return Collections.unmodifiableList(rejectedItems);
+  }
+
+  /**
+   * @return Progress in the script acknowledged by Elasticsearch, or null if nothing has been acknowledged.
+   */
+  public BulkProgress getProgress() {
+    return progress;
+  }
+
+  void setProgress(BulkProgress progress) {
+    this.progress = progress;
+  }
+
+  public static boolean isRejection(int status) {
+    return status == 429 || status == 503;
+  }
+
+  void addTook(long took) {
+    this.took += took;
+  }
+
+  void addActions(long actions) {
+    this.actions += actions;
+  }
+
+  void addFailures(int status, long count) {
+    Long current = this.failuresByStatus.get(status);
+    this.failuresByStatus.put(status, current == null ? count : current + count);
+    this.failedItems += count;
+  }
+
+  void addErrorReason(String reason) {
+    if (reason != null && this.errorReasons.size() < this.maxErrorReasons) {
+      this.errorReasons.add(reason);
+    }
+  }
+
+  void addRejectedItem(int position, int status, String reason) {
+    this.rejectedItems.add(position);
+    Long current = this.rejectionsByStatus.get(status);
+    this.rejectionsByStatus.put(status, current == null ? 1 : current + 1);
+    if (this.rejectionReason == null) {
+      this.rejectionReason = reason;
+    }
+  }
+
+  void addRetriedItems(long count) {
+    this.retriedItems += count;
+  }
+
+  /**
+   * Gives up retrying, the rejected items become failures.
+   */
+  void failRejectedItems() {
+    this.actions += this.rejectedItems.size();
+    for (Map.Entry<Integer, Long> entry : this.rejectionsByStatus.entrySet()) {
+      addFailures(entry.getKey(), entry.getValue());
+    }
+    addErrorReason(this.rejectionReason);
+    this.rejectedItems.clear();
+    this.rejectionsByStatus.clear();
+  }
+
+  /**
+   * Adds the statistics of another result to this one. Rejected items are not merged, they must be retried or failed first.
+   */
+  synchronized void merge(BulkResult other) {
+    this.actions += other.actions;
+    this.took += other.took;
+    this.retriedItems += other.retriedItems;
+    for (Map.Entry<Integer, Long> entry : other.failuresByStatus.entrySet()) {
+      addFailures(entry.getKey(), entry.getValue());
+    }
+    for (String reason : other.errorReasons) {
+      addErrorReason(reason);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "actions: " + actions + ", failed: " + failedItems + ", took: " + took + "ms"
+        + (retriedItems == 0 ? "" : ", retried: " + retriedItems)
+        + (rejectedItems.isEmpty() ? "" : ", rejected: " + rejectedItems.size())
+        + (failuresByStatus.isEmpty() ? "" : ", failures by status: " + failuresByStatus);
+  }
+}
@@ -0,0 +1,11 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.IOException;
+
+/**
+ * Notified when the progress of a bulk script execution moves forward.
+ */
+public interface CheckpointListener {
+
+  void onCheckpoint(BulkProgress progress) throws IOException;
+}
@@ -0,0 +1,53 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the progress acknowledged by Elasticsearch. As chunks may complete in any order,
+ * the progress only moves forward once every previous chunk has succeeded.
+ */
+class CheckpointTracker {
+
+  private final CheckpointListener listener;
+  private final long intervalNanos;
+  private final Map<Long, BulkProgress> completed = new TreeMap<>();
+  private long nextSequence;
+  private BulkProgress progress;
+  private long lastCheckpoint = System.nanoTime();
+
+  /**
+   * @param listener
+   *         : Listener notified of the progress, may be null.
+   * @param interval
+   *         : Minimum time between two notifications, in milliseconds.
+   */
+  CheckpointTracker(CheckpointListener listener, long interval) {
+    this.listener = listener;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+  }
+
+  synchronized void complete(BulkChunk chunk) throws IOException {
+    this.completed.put(chunk.getSequence(), chunk.getProgress());
+    BulkProgress previous = this.progress;
+    BulkProgress next;
+    while ((next = this.completed.remove(this.nextSequence)) != null) {
+      this.progress = next;
+      this.nextSequence++;
+    }
+    long now = System.nanoTime();
+    if (this.listener != null && this.progress != previous && now - this.lastCheckpoint >= this.intervalNanos) {
+      this.lastCheckpoint = now;
+      this.listener.onCheckpoint(this.progress);
+    }
+  }
+
+  /**
+   * @return The progress acknowledged so far, or null if no chunk has been acknowledged yet.
+   */
+  synchronized BulkProgress getProgress() {
+    return this.progress;
+  }
+}
@@ -0,0 +1,69 @@
+package org.indusbox.flamingo.bulk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Compresses an entity with gzip while it is written to the connection, with a configurable compression level.
+ * As the compressed length is unknown, the request is sent with a chunked transfer encoding.
+ */
+public class GzipCompressedEntity extends HttpEntityWrapper {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final int level;
+
+  /**
+   * @param level
+   *         : Compression level, from 1 (fastest) to 9 (best compression), or -1 for the default level.
+   */
+  public GzipCompressedEntity(HttpEntity entity, int level) {
+    super(entity);
+    this.level = level;
+  }
+
+  @Override
+  public BasicHeader getContentEncoding() {
+    return new BasicHeader("Content-Encoding", "gzip");
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public boolean isChunked() {
+    return true;
+  }
+
+  /**
+   * The compressed content is buffered in memory, requests are sent through {@link #writeTo(OutputStream)} which streams it.
+   */
+  @Override
+  public InputStream getContent() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE) {
+      {
+        this.def.setLevel(level);
+      }
+    };
+    this.wrappedEntity.writeTo(gzip);
+    // Finish the gzip stream without closing the connection stream
+    gzip.finish();
+  }
+}
@@ -0,0 +1,35 @@
+package org.indusbox.flamingo.bulk;
+
+/**
+ * Bounds the number of bulk requests in flight. Unlike a semaphore, the limit can change while requests are in flight.
+ */
+class InFlightLimiter {
+
+  private final AdaptiveBulkController controller;
+  private int inFlight;
+
+  InFlightLimiter(AdaptiveBulkController controller) {
+    this.controller = controller;
+  }
+
+  synchronized void acquire() throws InterruptedException {
+    while (this.inFlight >= this.controller.getConcurrency()) {
+      wait();
+    }
+    this.inFlight++;
+  }
+
+  synchronized void release() {
+    this.inFlight--;
+    notifyAll();
+  }
+
+  /**
+   * Waits until every request in flight has been released.
+   */
+  synchronized void awaitAll() throws InterruptedException {
+    while (this.inFlight > 0) {
+      wait();
+    }
+  }
+}
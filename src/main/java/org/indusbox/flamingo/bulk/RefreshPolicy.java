@@ -0,0 +1,52 @@
+package org.indusbox.flamingo.bulk;
+
+/**
+ * When the documents written by a migration, scripts and metadata, are made visible to search.
+ */
+public enum RefreshPolicy {
+
+  /**
+   * Every request forces a refresh, as many tiny segments as requests.
+   */
+  TRUE("true", "?refresh=true"),
+  /**
+   * No refresh is requested, documents are visible after the refresh interval of their index.
+   */
+  NONE("none", ""),
+  /**
+   * A single refresh of all the indices at the end of the migration.
+   */
+  END_OF_RUN("end_of_run", ""),
+  /**
+   * Requests wait for the next scheduled refresh, without forcing it. Requires Elasticsearch 5.0 or later.
+   */
+  WAIT_FOR("wait_for", "?refresh=wait_for");
+
+  private final String name;
+  private final String parameter;
+
+  RefreshPolicy(String name, String parameter) {
+    this.name = name;
+    this.parameter = parameter;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return The query string to add to write requests, empty if none.
+   */
+  public String getParameter() {
+    return parameter;
+  }
+
+  public static RefreshPolicy fromName(String name) {
+    for (RefreshPolicy policy : values()) {
+      if (policy.name.equals(name)) {
+        return policy;
+      }
+    }
+    throw new IllegalArgumentException("Unknown refresh policy " + name);
+  }
+}
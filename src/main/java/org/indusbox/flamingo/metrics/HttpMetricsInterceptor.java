@@ -0,0 +1,38 @@
+package org.indusbox.flamingo.metrics;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Times HTTP requests, from sending the request to receiving the response headers, per method (http.GET, http.POST...)
+ * and counts responses per status class (http.status.2xx, http.status.4xx...).
+ */
+public final class HttpMetricsInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+
+  private static final String START_ATTRIBUTE = HttpMetricsInterceptor.class.getName() + ".start";
+  private static final String METHOD_ATTRIBUTE = HttpMetricsInterceptor.class.getName() + ".method";
+
+  private final Metrics metrics;
+
+  public HttpMetricsInterceptor(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void process(HttpRequest request, HttpContext context) {
+    context.setAttribute(METHOD_ATTRIBUTE, request.getRequestLine().getMethod());
+    context.setAttribute(START_ATTRIBUTE, System.nanoTime());
+  }
+
+  @Override
+  public void process(HttpResponse response, HttpContext context) {
+    Object start = context.getAttribute(START_ATTRIBUTE);
+    if (start instanceof Long) {
+      this.metrics.recordSince("http." + context.getAttribute(METHOD_ATTRIBUTE), (Long) start);
+    }
+    this.metrics.increment("http.status." + response.getStatusLine().getStatusCode() / 100 + "xx", 1);
+  }
+}
@@ -0,0 +1,174 @@
+package org.indusbox.flamingo.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters and timers of a script manager, kept in memory for the run summary and JMX, and forwarded to a pluggable registry.
+ * Timers are named after what they measure: phase.* for the migration phases, script.* per script, bulk.* per bulk request
+ * and http.* per HTTP request.
+ */
+public final class Metrics implements MetricsRegistry, MetricsMXBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+  private final MetricsRegistry registry;
+  private ObjectName objectName;
+
+  /**
+   * @param registry
+   *         : Registry the metrics are forwarded to, may be null.
+   */
+  public Metrics(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public void increment(String name, long amount) {
+    AtomicLong counter = this.counters.get(name);
+    if (counter == null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = this.counters.putIfAbsent(name, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.addAndGet(amount);
+    if (this.registry != null) {
+      this.registry.increment(name, amount);
+    }
+  }
+
+  @Override
+  public void record(String name, long nanos) {
+    Timer timer = this.timers.get(name);
+    if (timer == null) {
+      Timer newTimer = new Timer();
+      timer = this.timers.putIfAbsent(name, newTimer);
+      if (timer == null) {
+        timer = newTimer;
+      }
+    }
+    timer.record(nanos);
+    if (this.registry != null) {
+      this.registry.record(name, nanos);
+    }
+  }
+
+  /**
+   * Records the time elapsed since the given start, as returned by {@link System#nanoTime()}.
+   */
+  public void recordSince(String name, long start) {
+    record(name, System.nanoTime() - start);
+  }
+
+  public long getCounter(String name) {
+    AtomicLong counter = this.counters.get(name);
+    return counter != null ? counter.get() : 0;
+  }
+
+  /**
+   * @return The timer, or null if nothing has been recorded.
+   */
+  public Timer getTimer(String name) {
+    return this.timers.get(name);
+  }
+
+  /**
+   * Registers the metrics in the platform MBean server, as org.indusbox.flamingo:type=Metrics,id=N.
+   */
+  public void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("org.indusbox.flamingo:type=Metrics,id=" + INSTANCES.incrementAndGet());
+      server.registerMBean(this, name);
+      this.objectName = name;
+    } catch (JMException e) {
+      LOGGER.warn("Unable to register metrics MBean: {}", e.toString());
+    }
+  }
+
+  public void unregisterMBean() {
+    if (this.objectName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+    } catch (JMException e) {
+      LOGGER.warn("Unable to unregister metrics MBean: {}", e.toString());
+    }
+    this.objectName = null;
+  }
+
+  @Override
+  public Map<String, Long> getCounters() {
+    Map<String, Long> result = new TreeMap<>();
+    for (Map.Entry<String, AtomicLong> counter : this.counters.entrySet()) {
+      result.put(counter.getKey(), counter.getValue().get());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getTimerCounts() {
+    Map<String, Long> result = new TreeMap<>();
+    for (Map.Entry<String, Timer> timer : this.timers.entrySet()) {
+      result.put(timer.getKey(), timer.getValue().getCount());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Double> getTimerTotalMillis() {
+    Map<String, Double> result = new TreeMap<>();
+    for (Map.Entry<String, Timer> timer : this.timers.entrySet()) {
+      result.put(timer.getKey(), timer.getValue().getTotal() / NANOS_PER_MILLI);
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Double> getTimerP99Millis() {
+    Map<String, Double> result = new TreeMap<>();
+    for (Map.Entry<String, Timer> timer : this.timers.entrySet()) {
+      result.put(timer.getKey(), timer.getValue().getPercentile(0.99) / NANOS_PER_MILLI);
+    }
+    return result;
+  }
+
+  /**
+   * @return Counters, then timers with their count, total, mean, p50, p99 and max durations in milliseconds, one per line.
+   */
+  @Override
+  public String getSummary() {
+    StringBuilder summary = new StringBuilder("Migration metrics");
+    for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+      summary.append("\n  ").append(counter.getKey()).append(": ").append(counter.getValue());
+    }
+    for (Map.Entry<String, Timer> entry : new TreeMap<>(this.timers).entrySet()) {
+      Timer timer = entry.getValue();
+      long count = timer.getCount();
+      summary.append(String.format("%n  %s: count=%d, total=%.1fms, mean=%.1fms, p50=%.1fms, p99=%.1fms, max=%.1fms", entry.getKey(), count,
+          timer.getTotal() / NANOS_PER_MILLI, count > 0 ? timer.getTotal() / NANOS_PER_MILLI / count : 0,
+          timer.getPercentile(0.5) / NANOS_PER_MILLI, timer.getPercentile(0.99) / NANOS_PER_MILLI, timer.getMax() / NANOS_PER_MILLI));
+    }
+    return summary.toString();
+  }
+}
@@ -0,0 +1,19 @@
+package org.indusbox.flamingo.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics of a script manager.
+ */
+public interface MetricsMXBean {
+
+  Map<String, Long> getCounters();
+
+  Map<String, Long> getTimerCounts();
+
+  Map<String, Double> getTimerTotalMillis();
+
+  Map<String, Double> getTimerP99Millis();
+
+  String getSummary();
+}
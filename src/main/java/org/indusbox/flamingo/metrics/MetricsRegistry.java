@@ -0,0 +1,18 @@
+package org.indusbox.flamingo.metrics;
+
+/**
+ * Registry the migration metrics are reported to, e.g. an adapter to Micrometer or Dropwizard Metrics.
+ * It is called concurrently, from the threads sending bulk requests.
+ */
+public interface MetricsRegistry {
+
+  /**
+   * Adds an amount to a counter.
+   */
+  void increment(String name, long amount);
+
+  /**
+   * Records a duration, in nanoseconds, to a timer.
+   */
+  void record(String name, long nanos);
+}
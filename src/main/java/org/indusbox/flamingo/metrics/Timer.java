@@ -0,0 +1,83 @@
+package org.indusbox.flamingo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations recorded in a log-linear histogram: 8 buckets per power of two, percentiles are within 12.5% of the recorded durations.
+ */
+public final class Timer {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(bucketIndex(Long.MAX_VALUE) + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    this.buckets.incrementAndGet(bucketIndex(value));
+    this.count.incrementAndGet();
+    this.total.addAndGet(value);
+    long currentMax;
+    while (value > (currentMax = this.max.get()) && !this.max.compareAndSet(currentMax, value)) {
+      // Retry, another thread has recorded a new maximum
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return The total of the recorded durations, in nanoseconds.
+   */
+  public long getTotal() {
+    return total.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @param percentile
+   *         : Between 0 and 1.
+   * @return The upper bound of the bucket holding the percentile, in nanoseconds, 0 if nothing has been recorded.
+   */
+  public long getPercentile(double percentile) {
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile * count));
+    long cumulated = 0;
+    for (int i = 0; i < this.buckets.length(); i++) {
+      cumulated += this.buckets.get(i);
+      if (cumulated >= rank) {
+        return Math.min(bucketUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = index % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+}
@@ -0,0 +1,46 @@
+package org.indusbox.flamingo.scripts;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Algorithms available to compute script checksums. The algorithm is recorded with the checksum in the script metadata.
+ */
+public enum ChecksumAlgorithm {
+
+  MD5("md5", Hashing.md5()),
+  SHA256("sha256", Hashing.sha256()),
+  MURMUR3_128("murmur3_128", Hashing.murmur3_128());
+
+  private final String name;
+  private final HashFunction hashFunction;
+
+  ChecksumAlgorithm(String name, HashFunction hashFunction) {
+    this.name = name;
+    this.hashFunction = hashFunction;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public HashFunction getHashFunction() {
+    return hashFunction;
+  }
+
+  /**
+   * @param name
+   *         : Algorithm name, null for the metadata recorded before the algorithm was recorded, which are MD5 checksums.
+   */
+  public static ChecksumAlgorithm fromName(String name) {
+    if (name == null) {
+      return MD5;
+    }
+    for (ChecksumAlgorithm algorithm : values()) {
+      if (algorithm.name.equals(name)) {
+        return algorithm;
+      }
+    }
+    throw new IllegalArgumentException("Unknown checksum algorithm " + name);
+  }
+}
@@ -0,0 +1,173 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of script checksums, so that unchanged scripts are not read again on every migration.
+ * A checksum is keyed by the script name and the algorithm it has been computed with, so that checksums of several algorithms are kept
+ * side by side. It is only valid while the script size, modification time and file key (inode) are unchanged.
+ * Only the entries used during the migration are saved, entries of removed scripts are then dropped.
+ */
+public final class ChecksumCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChecksumCache.class);
+
+  public static final String DEFAULT_FILE_NAME = ".flamingo-checksums";
+
+  private static final int MAGIC = 0x464c4b32;
+
+  private final File file;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<String, Entry> usedEntries = new ConcurrentHashMap<>();
+  private volatile boolean dirty;
+
+  private ChecksumCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Loads the cache. A missing or unreadable cache is considered empty.
+   */
+  public static ChecksumCache load(File file) {
+    ChecksumCache cache = new ChecksumCache(file);
+    if (!file.isFile()) {
+      return cache;
+    }
+    try {
+      // Read at once and not memory mapped, so that the file can then be replaced while the cache is in use
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      if (buffer.getInt() != MAGIC) {
+        LOGGER.warn("Ignoring checksum cache {}, unknown format", file);
+        return cache;
+      }
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        String name = readString(buffer);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        String fileKey = readString(buffer);
+        String algorithm = readString(buffer);
+        String checksum = readString(buffer);
+        cache.entries.put(key(name, algorithm), new Entry(name, size, lastModified, fileKey, algorithm, checksum));
+      }
+    } catch (IOException | BufferUnderflowException e) {
+      LOGGER.warn("Ignoring checksum cache {}, unable to read it: {}", file, e.toString());
+      cache.entries.clear();
+    }
+    return cache;
+  }
+
+  /**
+   * @return The cached checksum of the script, or null if it is unknown or the script has changed since.
+   */
+  public String get(ScriptEntry script, ChecksumAlgorithm algorithm) {
+    String key = key(script.getName(), algorithm.getName());
+    Entry entry = this.entries.get(key);
+    if (entry == null || !entry.matches(script)) {
+      return null;
+    }
+    this.usedEntries.put(key, entry);
+    return entry.checksum;
+  }
+
+  public void put(ScriptEntry script, ChecksumAlgorithm algorithm, String checksum) {
+    String key = key(script.getName(), algorithm.getName());
+    Entry entry = new Entry(script.getName(), script.getSize(), script.getLastModified(), script.getFileKey(), algorithm.getName(), checksum);
+    this.entries.put(key, entry);
+    this.usedEntries.put(key, entry);
+    this.dirty = true;
+  }
+
+  /**
+   * Writes the used entries, if any checksum has been added or an entry is no longer used.
+   * The cache is replaced atomically, a failure to write it only prevents the next migration from using it.
+   */
+  public void save() {
+    if (!this.dirty && this.usedEntries.size() == this.entries.size()) {
+      return;
+    }
+    File tmpFile = new File(this.file.getPath() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(this.usedEntries.size());
+        for (Entry entry : this.usedEntries.values()) {
+          writeString(out, entry.name);
+          out.writeLong(entry.size);
+          out.writeLong(entry.lastModified);
+          writeString(out, entry.fileKey);
+          writeString(out, entry.algorithm);
+          writeString(out, entry.checksum);
+        }
+      }
+      try {
+        Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      this.dirty = false;
+    } catch (IOException e) {
+      LOGGER.warn("Unable to save checksum cache {}: {}", this.file, e.toString());
+      tmpFile.delete();
+    }
+  }
+
+  private static String key(String name, String algorithm) {
+    return name + '\0' + algorithm;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static final class Entry {
+
+    private final String name;
+    private final long size;
+    private final long lastModified;
+    private final String fileKey;
+    private final String algorithm;
+    private final String checksum;
+
+    private Entry(String name, long size, long lastModified, String fileKey, String algorithm, String checksum) {
+      this.name = name;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+      this.algorithm = algorithm;
+      this.checksum = checksum;
+    }
+
+    private boolean matches(ScriptEntry script) {
+      return this.size == script.getSize() && this.lastModified == script.getLastModified() && Objects.equals(this.fileKey, script.getFileKey());
+    }
+  }
+}
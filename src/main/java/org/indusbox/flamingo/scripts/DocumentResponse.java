@@ -0,0 +1,64 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Response to a get or index document request, parsed as a stream. Only the version and the top-level values of _source are kept.
+ */
+final class DocumentResponse {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private long version;
+  private final Map<String, String> source = new HashMap<>();
+
+  private DocumentResponse() {
+  }
+
+  static DocumentResponse parse(InputStream content) throws IOException {
+    DocumentResponse response = new DocumentResponse();
+    try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Unable to parse document response, JSON object expected");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        if ("_version".equals(field)) {
+          response.version = parser.getLongValue();
+        } else if ("_source".equals(field) && token == JsonToken.START_OBJECT) {
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String sourceField = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+              response.source.put(sourceField, parser.getText());
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return response;
+  }
+
+  long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return The text of a top-level value of _source, null if it is missing, an object or an array.
+   */
+  String getSourceValue(String field) {
+    return source.get(field);
+  }
+}
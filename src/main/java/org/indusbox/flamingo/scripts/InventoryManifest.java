@@ -0,0 +1,126 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listing of the scripts directories made by the previous scan, with their modification time.
+ * A directory whose modification time is unchanged still has the same entries, its listing doesn't need to be read again.
+ */
+public final class InventoryManifest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(InventoryManifest.class);
+
+  private static final int MAGIC = 0x464c4931;
+
+  private final Map<String, Directory> directories = new HashMap<>();
+
+  /**
+   * Loads a manifest. A missing or unreadable manifest is considered empty.
+   */
+  public static InventoryManifest load(File file) {
+    InventoryManifest manifest = new InventoryManifest();
+    if (!file.isFile()) {
+      return manifest;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        LOGGER.warn("Ignoring inventory manifest {}, unknown format", file);
+        return manifest;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        Directory directory = new Directory(in.readLong());
+        readNames(in, directory.scripts);
+        readNames(in, directory.subDirectories);
+        manifest.directories.put(name, directory);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Ignoring inventory manifest {}, unable to read it: {}", file, e.toString());
+      manifest.directories.clear();
+    }
+    return manifest;
+  }
+
+  /**
+   * @param name
+   *         : Directory path relative to the scripts directory, with '/' separators, empty for the scripts directory.
+   * @return The directory listing, or null if it is unknown.
+   */
+  Directory get(String name) {
+    return this.directories.get(name);
+  }
+
+  void put(String name, Directory directory) {
+    this.directories.put(name, directory);
+  }
+
+  /**
+   * Writes the manifest atomically. A failure to write it only prevents the next scan from using it.
+   */
+  public void save(File file) {
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(this.directories.size());
+        for (Map.Entry<String, Directory> entry : this.directories.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue().lastModified);
+          writeNames(out, entry.getValue().scripts);
+          writeNames(out, entry.getValue().subDirectories);
+        }
+      }
+      try {
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to save inventory manifest {}: {}", file, e.toString());
+      tmpFile.delete();
+    }
+  }
+
+  private static void readNames(DataInputStream in, List<String> names) throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      names.add(in.readUTF());
+    }
+  }
+
+  private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+    out.writeInt(names.size());
+    for (String name : names) {
+      out.writeUTF(name);
+    }
+  }
+
+  static final class Directory {
+
+    final long lastModified;
+    final List<String> scripts = new ArrayList<>();
+    final List<String> subDirectories = new ArrayList<>();
+
+    Directory(long lastModified) {
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Cluster-wide lock held by a single migration at a time, stored as a document of the metadata index.
+ * The lock document is created with op_type=create, so only one migration can create it. It holds a lease renewed by a heartbeat:
+ * the lock of a migration which died without releasing it is taken over once its lease has expired.
+ * Lease expiration is compared with the local clock, clocks of the migrating hosts must be synchronized well within the lease time.
+ */
+public final class MigrationLock implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MigrationLock.class);
+
+  private static final String LOCK_TYPE = "migration-lock";
+  private static final String LOCK_ID = "migration";
+  private static final long MIN_WAIT = 100;
+  private static final long MAX_WAIT = 5000;
+
+  private final CloseableHttpClient client;
+  private final String lockUri;
+  private final long leaseTime;
+  private final String owner;
+  private final ScheduledExecutorService heartbeat;
+  private volatile long version;
+  private volatile boolean lost;
+  // Time the current lease was requested at, it expires leaseTime later
+  private volatile long renewedAt;
+
+  private MigrationLock(CloseableHttpClient client, String lockUri, long leaseTime, String owner, long version, long renewedAt) {
+    this.client = client;
+    this.lockUri = lockUri;
+    this.leaseTime = leaseTime;
+    this.owner = owner;
+    this.version = version;
+    this.renewedAt = renewedAt;
+    this.heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("flamingo-lock-heartbeat")
+        .setDaemon(true)
+        .build());
+    long renewInterval = Math.max(1, leaseTime / 3);
+    this.heartbeat.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        renew();
+      }
+    }, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Acquires the lock, waiting for the migration holding it to release it or for its lease to expire.
+   * Waiting migrations poll the lock with an exponential backoff and a random jitter, so that they don't retry all at once.
+   *
+   * @param uri
+   *         : Elasticsearch URI.
+   * @param leaseTime
+   *         : Time, in milliseconds, after which the lock can be taken over if it has not been renewed.
+   * @param waitTimeout
+   *         : Maximum time, in milliseconds, to wait for the lock.
+   */
+  static MigrationLock acquire(CloseableHttpClient client, String uri, String indexName, long leaseTime, long waitTimeout) throws IOException {
+    String lockUri = uri + "/" + indexName + "/" + LOCK_TYPE + "/" + LOCK_ID;
+    String owner = createOwner();
+    Random random = new Random();
+    long deadline = System.currentTimeMillis() + waitTimeout;
+    long wait = MIN_WAIT;
+    while (true) {
+      long attemptedAt = System.currentTimeMillis();
+      Long version = tryAcquire(client, lockUri, owner, leaseTime);
+      if (version != null) {
+        LOGGER.info("acquireLock, owner: {}", owner);
+        return new MigrationLock(client, lockUri, leaseTime, owner, version, attemptedAt);
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new IllegalStateException("Abort migration. Unable to acquire the migration lock within " + waitTimeout + "ms");
+      }
+      try {
+        Thread.sleep(Math.min(remaining, wait / 2 + (long) (random.nextDouble() * wait / 2)));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the migration lock");
+      }
+      wait = Math.min(wait * 2, Math.min(MAX_WAIT, leaseTime));
+    }
+  }
+
+  /**
+   * @return true if the lease could not be renewed before it expired, another migration may have taken the lock over.
+   */
+  public boolean isLost() {
+    return this.lost || isExpired();
+  }
+
+  /**
+   * Aborts the migration if the lock has been lost, another migration may be applying the same scripts.
+   */
+  public void check() {
+    if (isLost()) {
+      throw new IllegalStateException("Abort migration. The migration lock has been taken over by another migration, its lease has expired");
+    }
+  }
+
+  /**
+   * Stops the heartbeat and releases the lock, unless it has been taken over.
+   * A renewal in progress is awaited first, the lock document is deleted at its latest version.
+   */
+  @Override
+  public void close() throws IOException {
+    this.heartbeat.shutdown();
+    try {
+      if (!this.heartbeat.awaitTermination(this.leaseTime, TimeUnit.MILLISECONDS)) {
+        LOGGER.warn("Migration lock renewal still in progress, releasing the lock anyway");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while releasing the migration lock");
+    }
+    if (isLost()) {
+      return;
+    }
+    try (CloseableHttpResponse execute = this.client.execute(new HttpDelete(this.lockUri + "?version=" + this.version))) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      LOGGER.debug("releaseLock, statusCode: {}", statusCode);
+      if (statusCode != 200 && statusCode != 404) {
+        LOGGER.warn("Unable to release the migration lock, it will be taken over once its lease has expired, statusCode: {}, response: {}",
+            statusCode, EntityUtils.toString(execute.getEntity()));
+      } else {
+        EntityUtils.consume(execute.getEntity());
+      }
+    }
+  }
+
+  /**
+   * @return The version of the lock document if the lock has been acquired, null if it is held by another migration.
+   */
+  private static Long tryAcquire(CloseableHttpClient client, String lockUri, String owner, long leaseTime) throws IOException {
+    Long version = write(client, lockUri + "?op_type=create", owner, leaseTime);
+    if (version != null) {
+      return version;
+    }
+    try (CloseableHttpResponse execute = client.execute(new HttpGet(lockUri))) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      if (statusCode == 404) {
+        // Released meanwhile
+        EntityUtils.consume(execute.getEntity());
+        return null;
+      }
+      if (statusCode != 200) {
+        throw new RuntimeException("Unable to read the migration lock, statusCode: " + statusCode + ", response: " + EntityUtils.toString(execute.getEntity()));
+      }
+      DocumentResponse lock = DocumentResponse.parse(execute.getEntity().getContent());
+      long expiresAt = Long.parseLong(lock.getSourceValue("expiresAt"));
+      if (expiresAt > System.currentTimeMillis()) {
+        return null;
+      }
+      // Take over an expired lease, unless another migration does it first
+      LOGGER.info("acquireLock, lease of {} has expired", lock.getSourceValue("owner"));
+      return write(client, lockUri + "?version=" + lock.getVersion(), owner, leaseTime);
+    }
+  }
+
+  private void renew() {
+    long renewingAt = System.currentTimeMillis();
+    try {
+      Long renewedVersion = write(this.client, this.lockUri + "?version=" + this.version, this.owner, this.leaseTime);
+      if (renewedVersion == null) {
+        this.lost = true;
+        this.heartbeat.shutdown();
+        LOGGER.error("Migration lock has been taken over by another migration, its lease has expired");
+      } else {
+        this.version = renewedVersion;
+        this.renewedAt = renewingAt;
+      }
+    } catch (IOException | RuntimeException e) {
+      if (isExpired()) {
+        // Another migration may take the lock over from now on
+        this.lost = true;
+        this.heartbeat.shutdown();
+        LOGGER.error("Unable to renew the migration lock before its lease expired: {}", e.toString());
+      } else {
+        // Retried on next heartbeat, before the lease expires
+        LOGGER.warn("Unable to renew the migration lock: {}", e.toString());
+      }
+    }
+  }
+
+  private boolean isExpired() {
+    return System.currentTimeMillis() >= this.renewedAt + this.leaseTime;
+  }
+
+  /**
+   * @return The new version of the lock document, or null on a version conflict.
+   */
+  @SuppressWarnings("unchecked")
+  private static Long write(CloseableHttpClient client, String requestUri, String owner, long leaseTime) throws IOException {
+    JSONObject lock = new JSONObject();
+    lock.put("owner", owner);
+    lock.put("expiresAt", System.currentTimeMillis() + leaseTime);
+    HttpPut request = new HttpPut(requestUri);
+    request.setEntity(createJsonEntity(lock.toJSONString()));
+    try (CloseableHttpResponse execute = client.execute(request)) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      if (statusCode == 409) {
+        EntityUtils.consume(execute.getEntity());
+        return null;
+      }
+      if (statusCode != 200 && statusCode != 201) {
+        throw new RuntimeException("Unable to write the migration lock, statusCode: " + statusCode + ", response: " + EntityUtils.toString(execute.getEntity()));
+      }
+      return DocumentResponse.parse(execute.getEntity().getContent()).getVersion();
+    }
+  }
+
+  private static String createOwner() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      host = "unknown";
+    }
+    return host + "/" + UUID.randomUUID();
+  }
+
+  private static StringEntity createJsonEntity(String jsonContent) {
+    return new StringEntity(jsonContent, ContentType.APPLICATION_JSON);
+  }
+}
@@ -0,0 +1,76 @@
+package org.indusbox.flamingo.scripts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the executed scripts metadata, loaded once at the beginning of a migration.
+ * Every decision of the migration is then answered from memory, instead of one query per script.
+ */
+public class MigrationState {
+
+  private final List<ScriptMetadata> scripts;
+  private final Map<String, ScriptMetadata> scriptsByFileName;
+  private final List<ScriptMetadata> failedScripts;
+  private final ScriptMetadata latestScript;
+
+  /**
+   * @param scripts
+   *         : Metadata of the executed scripts, sorted by file name.
+   */
+  public MigrationState(List<ScriptMetadata> scripts) {
+    this.scripts = Collections.unmodifiableList(scripts);
+    this.scriptsByFileName = new HashMap<>(scripts.size() * 2);
+    List<ScriptMetadata> failedScripts = new ArrayList<>();
+    ScriptMetadata latestScript = null;
+    for (ScriptMetadata script : scripts) {
+      this.scriptsByFileName.put(script.getFileName(), script);
+      if (!script.isSucceeded()) {
+        failedScripts.add(script);
+      }
+      if (latestScript == null || script.getExecutedDate().isAfter(latestScript.getExecutedDate())) {
+        latestScript = script;
+      }
+    }
+    this.failedScripts = Collections.unmodifiableList(failedScripts);
+    this.latestScript = latestScript;
+  }
+
+  public static MigrationState empty() {
+    return new MigrationState(new ArrayList<ScriptMetadata>());
+  }
+
+  public boolean isEmpty() {
+    return this.scripts.isEmpty();
+  }
+
+  /**
+   * @return Metadata of the executed scripts, sorted by file name.
+   */
+  public List<ScriptMetadata> getScripts() {
+    return scripts;
+  }
+
+  /**
+   * @param fileName
+   *         : Script name, relative to the scripts directory.
+   * @return Metadata of the script, or null if it has never been executed.
+   */
+  public ScriptMetadata getScript(String fileName) {
+    return this.scriptsByFileName.get(fileName);
+  }
+
+  public List<ScriptMetadata> getFailedScripts() {
+    return failedScripts;
+  }
+
+  /**
+   * @return Metadata of the last executed script, or null if no script has been executed.
+   */
+  public ScriptMetadata getLatestScript() {
+    return latestScript;
+  }
+}
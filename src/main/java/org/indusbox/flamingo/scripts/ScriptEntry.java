@@ -0,0 +1,76 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A script of the inventory, with its attributes read once when the scripts directory is scanned.
+ */
+public final class ScriptEntry {
+
+  private final String name;
+  private final File file;
+  private final long size;
+  private final long lastModified;
+  private final String fileKey;
+  private final ChecksumCache checksumCache;
+  private final Map<ChecksumAlgorithm, String> checksums = new EnumMap<>(ChecksumAlgorithm.class);
+
+  ScriptEntry(String name, File file, long size, long lastModified, String fileKey, ChecksumCache checksumCache) {
+    this.name = name;
+    this.file = file;
+    this.size = size;
+    this.lastModified = lastModified;
+    this.fileKey = fileKey;
+    this.checksumCache = checksumCache;
+  }
+
+  /**
+   * @return Script path relative to the scripts directory, with '/' separators, as stored in the script metadata.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return Canonical script file.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return Identifier of the file (device and inode on Unix), or an empty string if the file system doesn't provide one.
+   */
+  public String getFileKey() {
+    return fileKey;
+  }
+
+  /**
+   * @return Checksum of the script content, taken from the checksum cache if the script is unchanged, otherwise computed on first call.
+   */
+  public synchronized String getChecksum(ChecksumAlgorithm algorithm) throws IOException {
+    String checksum = this.checksums.get(algorithm);
+    if (checksum == null && this.checksumCache != null) {
+      checksum = this.checksumCache.get(this, algorithm);
+    }
+    if (checksum == null) {
+      checksum = ScriptFile.checksum(this.file, algorithm);
+      if (this.checksumCache != null) {
+        this.checksumCache.put(this, algorithm, checksum);
+      }
+    }
+    this.checksums.put(algorithm, checksum);
+    return checksum;
+  }
+}
@@ -1,86 +1,87 @@
 package org.indusbox.flamingo.scripts;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.indusbox.flamingo.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Splitter;
+import com.google.common.hash.Hasher;
+import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
 
 public final class ScriptFile {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScriptFile.class);
+
+  private static final String JSON_EXTENSION = ".json";
+  private static final String GZIP_EXTENSION = ".gz";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+
   private ScriptFile() {
   }
 
+  /**
+   * Lists the scripts of the directory and of its sub directories, at any depth, sorted by path.
+   */
   public static List<File> getScripts(File scriptsDir) throws IOException {
+    List<File> result = new ArrayList<>();
+    for (ScriptScanner.ScannedScript script : ScriptScanner.scan(checkScriptsDir(scriptsDir), null).getScripts()) {
+      result.add(script.path.toFile());
+    }
+    return result;
+  }
+
+  static Path checkScriptsDir(File scriptsDir) {
     if (!scriptsDir.exists()) {
       throw new RuntimeException("Scripts directory " + scriptsDir + " doesn't exists");
     }
-    final File[] templatesArray = listScripts(scriptsDir);
+    return scriptsDir.toPath();
+  }
 
-    if (templatesArray == null || templatesArray.length == 0) {
-      return new ArrayList<>();
+  /**
+   * @return true for a json file (optionally gzipped) beginning with a number then a '_'. Hidden files are silently ignored.
+   */
+  static boolean isScriptFileName(String name) {
+    if (name.startsWith(".")) {
+      // Hidden files, such as the checksum cache
+      return false;
     }
-
-    List<File> result = new ArrayList<>();
-
-    for (File file : templatesArray) {
-      if (file.isDirectory()) {
-        // add dir content
-        final File[] subDirFiles = listScripts(file);
-        result.addAll(Arrays.asList(subDirFiles));
-      } else {
-        // add file
-        result.add(file);
-      }
+    boolean hasJsonFileExtension = name.endsWith(JSON_EXTENSION) || name.endsWith(JSON_EXTENSION + GZIP_EXTENSION);
+    if (!hasJsonFileExtension) {
+      LOGGER.warn("Ignoring script {}. File name must be have .json or .json.gz extension.", name);
+      return false;
     }
-
-    Collections.sort(result, new Comparator<File>() {
-      @Override
-      public int compare(File o1, File o2) {
-        return o1.getPath().compareTo(o2.getPath());
-      }
-    });
-
-    return result;
+    return hasIndex(name);
   }
 
   /**
-   * Lists json files and directories, all beginning with a number then a '_'.
-   *
-   * @param baseDir
-   *         : Base directory for search. Must be not null.
-   * @return A file array, or null if nothing found.
+   * @return true for a directory beginning with a number then a '_'. Hidden directories are silently ignored.
    */
-  private static File[] listScripts(File baseDir) {
+  static boolean isScriptDirectoryName(String name) {
+    return !name.startsWith(".") && hasIndex(name);
+  }
 
-    return baseDir.listFiles(new FilenameFilter() {
-      @Override
-      public boolean accept(File dir, String name) {
-        boolean hasJsonFileExtension = "json".equals(Files.getFileExtension(name));
-        if (!(hasJsonFileExtension || new File(dir, name).isDirectory())) {
-          System.err.println("Ignoring script " + name + ". File name must be have .json extension.");
-          return false;
-        }
-        Integer index = getIndex(name);
-        if (index == null) {
-          System.err.println("Ignoring script " + name + ". File name must start with an index number followed by an underscore and a description.");
-          return false;
-        }
-        return true;
-      }
-    });
+  private static boolean hasIndex(String name) {
+    if (getIndex(name) == null) {
+      LOGGER.warn("Ignoring script {}. File name must start with an index number followed by an underscore and a description.", name);
+      return false;
+    }
+    return true;
   }
 
   public static Integer getIndex(String scriptName) {
 
-    String nameWithoutExtension = Files.getNameWithoutExtension(scriptName);
+    String nameWithoutExtension = Files.getNameWithoutExtension(removeCompressionExtension(scriptName));
     final Iterator<String> stringIterator = Splitter.on('_').split(nameWithoutExtension).iterator();
     if (stringIterator.hasNext()) {
       String strIndex = stringIterator.next();
@@ -94,6 +95,73 @@ public final class ScriptFile {
     return null;
   }
 
+  private static String removeCompressionExtension(String scriptName) {
+    if (scriptName.endsWith(GZIP_EXTENSION)) {
+      return scriptName.substring(0, scriptName.length() - GZIP_EXTENSION.length());
+    }
+    return scriptName;
+  }
+
+  public static boolean isCompressed(File script) {
+    return script.getName().endsWith(GZIP_EXTENSION);
+  }
+
+  /**
+   * @return The content of the script, decompressed on the fly for a gzipped script.
+   */
+  public static ByteSource asByteSource(File script) {
+    final ByteSource source = Files.asByteSource(script);
+    if (!isCompressed(script)) {
+      return source;
+    }
+    return new ByteSource() {
+      @Override
+      public InputStream openStream() throws IOException {
+        InputStream in = source.openStream();
+        try {
+          return new GZIPInputStream(in, BUFFER_SIZE);
+        } catch (IOException | RuntimeException e) {
+          in.close();
+          throw e;
+        }
+      }
+    };
+  }
+
+  /**
+   * Computes the MD5 checksum of the script content, decompressed for a gzipped script.
+   * The checksum of a script is then the same whether it is compressed or not, and whatever the compression level.
+   */
+  public static String checksum(File script) throws IOException {
+    return checksum(script, ChecksumAlgorithm.MD5);
+  }
+
+  /**
+   * Computes the checksum of the script content with the given algorithm, decompressed for a gzipped script.
+   */
+  public static String checksum(File script, ChecksumAlgorithm algorithm) throws IOException {
+    Hasher hasher = algorithm.getHashFunction().newHasher();
+    byte[] buffer = new byte[HASH_BUFFER_SIZE];
+    try (InputStream in = asByteSource(script).openStream()) {
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        hasher.putBytes(buffer, 0, read);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @return The script path relative to the base directory, with '/' separators, as stored in the script metadata.
+   */
+  public static String getScriptName(File script, File baseDir) throws IOException {
+    return getScriptName(script.getCanonicalPath(), baseDir.getCanonicalPath());
+  }
+
+  static String getScriptName(String canonicalScriptPath, String canonicalBaseDir) {
+    return StringUtils.removeStart(canonicalScriptPath, canonicalBaseDir + File.separator).replaceAll("\\\\", "/");
+  }
+
   public static List<File> getScripts(String scriptsDir) throws IOException {
     return getScripts(new File(scriptsDir));
   }
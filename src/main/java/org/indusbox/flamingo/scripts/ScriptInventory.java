@@ -0,0 +1,180 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Immutable index of the scripts directory, built with a single scan.
+ * Script paths are canonicalized once, then scripts are looked up by name without any file system access.
+ */
+public final class ScriptInventory {
+
+  private final File scriptsDir;
+  private final List<ScriptEntry> scripts;
+  private final Map<String, ScriptEntry> scriptsByName;
+
+  private ScriptInventory(File scriptsDir, List<ScriptEntry> scripts) {
+    this.scriptsDir = scriptsDir;
+    this.scripts = Collections.unmodifiableList(scripts);
+    this.scriptsByName = new HashMap<>(scripts.size() * 2);
+    for (ScriptEntry script : scripts) {
+      this.scriptsByName.put(script.getName(), script);
+    }
+  }
+
+  /**
+   * Lists the scripts of the directory, in execution order.
+   */
+  public static ScriptInventory scan(File scriptsDir) throws IOException {
+    return scan(scriptsDir, null);
+  }
+
+  /**
+   * Lists the scripts of the directory, in execution order.
+   *
+   * @param checksumCache
+   *         : Cache of the checksums of the unchanged scripts, may be null.
+   */
+  public static ScriptInventory scan(File scriptsDir, ChecksumCache checksumCache) throws IOException {
+    return scan(scriptsDir, checksumCache, null);
+  }
+
+  /**
+   * Lists the scripts of the directory, in execution order.
+   *
+   * @param checksumCache
+   *         : Cache of the checksums of the unchanged scripts, may be null.
+   * @param manifestFile
+   *         : Manifest of the directories listing, read to skip the listing of unchanged directories then updated. May be null.
+   */
+  public static ScriptInventory scan(File scriptsDir, ChecksumCache checksumCache, File manifestFile) throws IOException {
+    Path root = ScriptFile.checkScriptsDir(scriptsDir).toRealPath();
+    InventoryManifest previousManifest = manifestFile != null ? InventoryManifest.load(manifestFile) : null;
+    ScriptScanner scanner = ScriptScanner.scan(root, previousManifest);
+    List<ScriptEntry> scripts = new ArrayList<>(scanner.getScripts().size());
+    for (ScriptScanner.ScannedScript script : scanner.getScripts()) {
+      BasicFileAttributes attributes = script.attributes;
+      Object fileKey = attributes.fileKey();
+      scripts.add(new ScriptEntry(script.name, script.path.toFile(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+          fileKey != null ? fileKey.toString() : "", checksumCache));
+    }
+    if (manifestFile != null) {
+      scanner.getManifest().save(manifestFile);
+    }
+    return new ScriptInventory(scriptsDir, scripts);
+  }
+
+  public File getScriptsDir() {
+    return scriptsDir;
+  }
+
+  public boolean isEmpty() {
+    return this.scripts.isEmpty();
+  }
+
+  public int size() {
+    return this.scripts.size();
+  }
+
+  /**
+   * @return Scripts in execution order.
+   */
+  public List<ScriptEntry> getScripts() {
+    return scripts;
+  }
+
+  /**
+   * Computes in parallel the checksums of the executed scripts found in the inventory, each one with the algorithm of its metadata.
+   * The checksums are then available without reading the scripts again.
+   *
+   * @param threads
+   *         : Number of scripts hashed at once.
+   */
+  public void computeChecksums(List<ScriptMetadata> scriptsMetadata, int threads) throws IOException {
+    List<Callable<String>> tasks = new ArrayList<>(scriptsMetadata.size());
+    for (ScriptMetadata scriptMetadata : scriptsMetadata) {
+      ScriptEntry script = getScript(scriptMetadata.getFileName());
+      if (script != null) {
+        tasks.add(checksumTask(script, ChecksumAlgorithm.fromName(scriptMetadata.getChecksumAlgorithm())));
+      }
+    }
+    invokeAll(tasks, threads);
+  }
+
+  /**
+   * Hashes the sequence of the script names and checksums, in execution order. Scripts are hashed in parallel.
+   * The fingerprint changes as soon as a script is added, removed, renamed or modified.
+   *
+   * @param threads
+   *         : Number of scripts hashed at once.
+   */
+  public String fingerprint(ChecksumAlgorithm algorithm, int threads) throws IOException {
+    List<Callable<String>> tasks = new ArrayList<>(this.scripts.size());
+    for (ScriptEntry script : this.scripts) {
+      tasks.add(checksumTask(script, algorithm));
+    }
+    invokeAll(tasks, threads);
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(algorithm.getName(), StandardCharsets.UTF_8).putByte((byte) '\n');
+    for (ScriptEntry script : this.scripts) {
+      hasher.putString(script.getName(), StandardCharsets.UTF_8).putByte((byte) 0)
+          .putString(script.getChecksum(algorithm), StandardCharsets.UTF_8).putByte((byte) '\n');
+    }
+    return hasher.hash().toString();
+  }
+
+  private static Callable<String> checksumTask(final ScriptEntry script, final ChecksumAlgorithm algorithm) {
+    return new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        return script.getChecksum(algorithm);
+      }
+    };
+  }
+
+  private static void invokeAll(List<Callable<String>> tasks, int threads) throws IOException {
+    if (threads <= 1 || tasks.size() <= 1) {
+      return;
+    }
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      for (Future<String> future : pool.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while computing checksums");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * @param name
+   *         : Script path relative to the scripts directory, with '/' separators.
+   * @return The script, or null if it is not in the scripts directory.
+   */
+  public ScriptEntry getScript(String name) {
+    return this.scriptsByName.get(name);
+  }
+}
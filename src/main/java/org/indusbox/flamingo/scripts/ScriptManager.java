@@ -1,8 +1,8 @@
 package org.indusbox.flamingo.scripts;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
@@ -11,65 +11,135 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.util.EntityUtils;
+import org.indusbox.flamingo.bulk.BulkChunkReader;
+import org.indusbox.flamingo.bulk.BulkExecutor;
+import org.indusbox.flamingo.bulk.BulkProgress;
+import org.indusbox.flamingo.bulk.BulkResponseParser;
+import org.indusbox.flamingo.bulk.BulkResult;
+import org.indusbox.flamingo.bulk.CheckpointListener;
+import org.indusbox.flamingo.bulk.RefreshPolicy;
+import org.indusbox.flamingo.metrics.HttpMetricsInterceptor;
+import org.indusbox.flamingo.metrics.Metrics;
 import org.indusbox.flamingo.settings.FlamingoSettings;
-import org.indusbox.flamingo.utils.StringUtils;
+import org.indusbox.flamingo.utils.ResponseBodies;
 import org.joda.time.DateTime;
 import org.joda.time.format.ISODateTimeFormat;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 import com.google.common.io.Resources;
 
-public final class ScriptManager {
+public final class ScriptManager implements Closeable {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScriptManager.class);
   private static final String FLAMINGO_INDEX_FILE = "flamingo-index.json";
   private static final String LATEST_SCRIPT_QUERY_FILE = "latest-script-query.json";
   private static final String LATEST_SUCCESSFUL_SCRIPT_QUERY_FILE = "latest-successful-script-query.json";
   private static final String LIST_FAIL_SCRIPT_QUERY_FILE = "list-fail-script-query.json";
+  private static final int SCROLL_SIZE = 500;
+  private static final String SCROLL_KEEP_ALIVE = "1m";
+  private static final int MAX_ERROR_REASONS = 10;
 
   private final CloseableHttpClient client;
   private final String uri;
   private final String flamingoIndexName;
   private final String flamingoTypeName = "migration-metadata";
+  private final String fingerprintUri;
+  private final int bulkMaxActions;
+  private final long bulkMaxBytes;
+  private final BulkExecutor bulkExecutor;
+  private final boolean bulkResume;
+  private final ChecksumAlgorithm checksumAlgorithm;
+  private final RefreshPolicy refreshPolicy;
+  private final int metadataBatchSize;
+  // Bulk lines of the script metadata not written yet
+  private final StringBuilder pendingMetadata = new StringBuilder();
+  private int pendingMetadataCount;
+  private final Metrics metrics;
+  private final int logMaxBodyLength;
 
   public ScriptManager(FlamingoSettings settings) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+    this.metrics = new Metrics(settings.getMetricsRegistry());
     this.client = createHttpClient(settings);
     this.uri = buildURI(settings);
     this.flamingoIndexName = settings.getIndexName();
+    this.fingerprintUri = this.uri + "/" + this.flamingoIndexName + "/migration-fingerprint/fingerprint";
+    this.bulkMaxActions = settings.getBulkMaxActions();
+    this.bulkMaxBytes = settings.getBulkMaxBytes();
+    this.bulkExecutor = new BulkExecutor(this.client, this.uri, settings, this.metrics);
+    this.bulkResume = settings.isBulkResume();
+    this.checksumAlgorithm = ChecksumAlgorithm.fromName(settings.getChecksumAlgorithm());
+    this.refreshPolicy = RefreshPolicy.fromName(settings.getRefreshPolicy());
+    this.metadataBatchSize = settings.getMetadataBatchSize();
+    this.logMaxBodyLength = settings.getLogMaxBodyLength();
+    if (settings.isMetricsJmx()) {
+      this.metrics.registerMBean();
+    }
+  }
+
+  /**
+   * Writes the buffered script metadata, then closes the pooled connections to Elasticsearch.
+   * The script manager can be reused across migrations until it is closed.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flushMetadata();
+    } finally {
+      this.metrics.unregisterMBean();
+      this.client.close();
+    }
+  }
+
+  /**
+   * @return The metrics of the migrations run with this script manager.
+   */
+  public Metrics getMetrics() {
+    return this.metrics;
   }
 
   public ScriptMetadata getLatestScript() throws IOException {
     HttpPost request = createSearchRequest(LATEST_SCRIPT_QUERY_FILE);
     try (CloseableHttpResponse execute = this.client.execute(request)) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("getLatestScript, statusCode: " + statusCode);
+      LOGGER.debug("getLatestScript, statusCode: {}", statusCode);
       if (statusCode == 200) {
-        String responseContent = EntityUtils.toString(execute.getEntity());
-        return ScriptMetadata.fromJSON(getFirstHit(responseContent));
+        return getFirstHit(execute);
       }
       throw new RuntimeException("Unable to get the latest executed script");
     }
@@ -79,10 +149,9 @@ public final class ScriptManager {
     HttpPost request = createSearchRequest(LATEST_SUCCESSFUL_SCRIPT_QUERY_FILE);
     try (CloseableHttpResponse execute = this.client.execute(request)) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("getLatestSuccessfulScript, statusCode: " + statusCode);
+      LOGGER.debug("getLatestSuccessfulScript, statusCode: {}", statusCode);
       if (statusCode == 200) {
-        String responseContent = EntityUtils.toString(execute.getEntity());
-        return ScriptMetadata.fromJSON(getFirstHit(responseContent));
+        return getFirstHit(execute);
       }
       throw new RuntimeException("Unable to get the latest successful script");
     }
@@ -92,21 +161,11 @@ public final class ScriptManager {
     HttpPost request = createSearchRequest(LIST_FAIL_SCRIPT_QUERY_FILE);
     try (CloseableHttpResponse execute = this.client.execute(request)) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("getFailScripts, statusCode: " + statusCode);
+      LOGGER.debug("getFailScripts, statusCode: {}", statusCode);
       if (statusCode == 200) {
-        JSONParser jsonParser = new JSONParser();
-        JSONObject responseJson = (JSONObject) jsonParser.parse(EntityUtils.toString(execute.getEntity()));
-        List<ScriptMetadata> result = new ArrayList<>();
-        JSONArray hits = (JSONArray) ((JSONObject) responseJson.get("hits")).get("hits");
-        for (Object hit : hits) {
-          JSONObject hitJSON = (JSONObject) hit;
-          result.add(ScriptMetadata.fromJSON(hitJSON));
-        }
-        return result;
+        return ScriptMetadataParser.parseHits(execute.getEntity().getContent(), Integer.MAX_VALUE);
       }
       throw new RuntimeException("Unable to list fail scripts");
-    } catch (ParseException e) {
-      throw new RuntimeException("Unable to parse result", e);
     }
   }
 
@@ -114,17 +173,15 @@ public final class ScriptManager {
     HttpPut request = new HttpPut(this.uri + "/" + this.flamingoIndexName);
     URL url = Resources.getResource(FLAMINGO_INDEX_FILE);
     String mapping = Resources.toString(url, Charsets.UTF_8);
-    StringEntity input = new StringEntity(mapping);
-    input.setContentType("application/json");
-    request.setEntity(input);
+    request.setEntity(createJsonEntity(mapping));
     try (CloseableHttpResponse response = this.client.execute(request)) {
       int statusCode = response.getStatusLine().getStatusCode();
-      System.out.println("createIndex, statusCode: " + statusCode);
+      LOGGER.debug("createIndex, statusCode: {}", statusCode);
       // Wait index creation, cluster status must be at least yellow
       HttpGet healthRequest = new HttpGet(this.uri + "/_cluster/health?wait_for_status=yellow");
       try (CloseableHttpResponse healthResponse = this.client.execute(healthRequest)) {
         int healthStatusCode = healthResponse.getStatusLine().getStatusCode();
-        System.out.println("clusterHealth, statusCode: " + statusCode);
+        LOGGER.debug("clusterHealth, statusCode: {}", healthStatusCode);
         return healthStatusCode == 200;
       }
     }
@@ -133,120 +190,337 @@ public final class ScriptManager {
   public boolean indexFlamingoExists() throws IOException {
     try (CloseableHttpResponse execute = this.client.execute(new HttpHead(this.uri + "/" + this.flamingoIndexName))) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("indexExists, statusCode: " + statusCode);
+      LOGGER.debug("indexExists, statusCode: {}", statusCode);
       return statusCode == 200;
     }
   }
 
+  /**
+   * Acquires the cluster-wide migration lock, stored in the metadata index which must exist.
+   *
+   * @param leaseTime
+   *         : Time, in milliseconds, after which the lock can be taken over if the migration holding it died.
+   * @param waitTimeout
+   *         : Maximum time, in milliseconds, to wait for the lock.
+   */
+  public MigrationLock acquireLock(long leaseTime, long waitTimeout) throws IOException {
+    return MigrationLock.acquire(this.client, this.uri, this.flamingoIndexName, leaseTime, waitTimeout);
+  }
+
+  /**
+   * @return The fingerprint of the scripts applied by the latest complete migration, or null if unknown. Read with a single realtime GET.
+   */
+  public String getFingerprint() throws IOException {
+    try (CloseableHttpResponse execute = this.client.execute(new HttpGet(this.fingerprintUri))) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      LOGGER.debug("getFingerprint, statusCode: {}", statusCode);
+      if (statusCode == 404) {
+        EntityUtils.consume(execute.getEntity());
+        return null;
+      }
+      if (statusCode == 200) {
+        return DocumentResponse.parse(execute.getEntity().getContent()).getSourceValue("fingerprint");
+      }
+      throw new RuntimeException("Unable to get the fingerprint");
+    }
+  }
+
+  /**
+   * Records the fingerprint of the scripts directory, once all its scripts have been applied.
+   */
+  @SuppressWarnings("unchecked")
+  public void writeFingerprint(String fingerprint, int scripts) throws IOException {
+    JSONObject jsonObject = new JSONObject();
+    jsonObject.put("fingerprint", fingerprint);
+    jsonObject.put("scripts", scripts);
+    jsonObject.put("updatedDate", DateTime.now().toString(ISODateTimeFormat.dateHourMinuteSecondMillis()));
+    HttpPut request = new HttpPut(this.fingerprintUri);
+    request.setEntity(createJsonEntity(jsonObject.toJSONString()));
+    try (CloseableHttpResponse execute = this.client.execute(request)) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      EntityUtils.consume(execute.getEntity());
+      LOGGER.debug("writeFingerprint, statusCode: {}", statusCode);
+    }
+  }
+
   public void executeScript(File script, File baseDir) throws IOException {
-    System.out.println("Executing script " + script.getName());
-    boolean succeeded = executeBulk(script);
-    JSONObject scriptJson = createScriptJson(script, baseDir, succeeded);
-    indexScript(scriptJson);
-    if (!succeeded) {
-      throw new RuntimeException("Abort migration. Error while executing " + script.getName());
+    LOGGER.info("Executing script {}", script.getName());
+    String id = null;
+    CheckpointListener checkpointListener = null;
+    if (this.bulkResume) {
+      // Index the script metadata first to checkpoint its progress, a failed execution can then be resumed
+      id = UUID.randomUUID().toString();
+      updateScript(createStartedScriptJson(script, baseDir), id);
+      checkpointListener = createCheckpointListener(id);
+    }
+    BulkResult result = executeBulk(script, null, checkpointListener);
+    writeScript(createScriptJson(script, baseDir, result), id);
+    if (!result.isSucceeded()) {
+      flushMetadata();
+      throw new RuntimeException("Abort migration. Error while executing " + script.getName() + " (" + result + "), errors: " + result.getErrorReasons());
     }
   }
 
-  public void updateScript(File script, File baseDir, String id) throws IOException {
-    System.out.println("Updating script " + script.getName());
-    boolean succeeded = executeBulk(script);
-    JSONObject jsonObject = createScriptJson(script, baseDir, succeeded);
-    updateScript(jsonObject, id);
-    if (!succeeded) {
-      throw new RuntimeException("Abort migration. Error while updating " + script.getName());
+  public void updateScript(File script, File baseDir, ScriptMetadata scriptMetadata) throws IOException {
+    LOGGER.info("Updating script {}", script.getName());
+    String id = scriptMetadata.getId();
+    BulkResult result;
+    if (this.bulkResume) {
+      result = executeBulk(script, scriptMetadata.getProgress(), createCheckpointListener(id));
+    } else {
+      result = executeBulk(script, null, null);
+    }
+    writeScript(createScriptJson(script, baseDir, result), id);
+    if (!result.isSucceeded()) {
+      flushMetadata();
+      throw new RuntimeException("Abort migration. Error while updating " + script.getName() + " (" + result + "), errors: " + result.getErrorReasons());
     }
   }
 
-  public boolean executeBulk(File scriptFile) throws IOException {
-    HttpPost bulkRequest = createBulkRequest(scriptFile);
-    try (CloseableHttpResponse execute = this.client.execute(bulkRequest)) {
-      int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("executeBulk, statusCode: " + statusCode);
-      String result = EntityUtils.toString(execute.getEntity());
-      System.out.println("executeBulk, result: " + result);
-      return statusCode == 200;
+  public BulkResult executeBulk(File scriptFile) throws IOException {
+    return executeBulk(scriptFile, null, null);
+  }
+
+  /**
+   * @param resumeFrom
+   *         : Progress of a previous execution to resume from, may be null.
+   * @param checkpointListener
+   *         : Listener notified of the execution progress, may be null.
+   */
+  public BulkResult executeBulk(File scriptFile, BulkProgress resumeFrom, CheckpointListener checkpointListener) throws IOException {
+    long start = System.nanoTime();
+    BulkResult result;
+    // Stream the script, chunk by chunk, to keep memory bounded whatever the script size
+    try (BulkChunkReader reader = openScript(scriptFile, resumeFrom)) {
+      result = this.bulkExecutor.execute(reader, checkpointListener);
     }
+    this.metrics.recordSince("script.execution", start);
+    this.metrics.increment(result.isSucceeded() ? "scripts.executed" : "scripts.failed", 1);
+    return result;
+  }
+
+  private BulkChunkReader openScript(File scriptFile, BulkProgress resumeFrom) throws IOException {
+    if (ScriptFile.isCompressed(scriptFile)) {
+      // Decompressed on the fly, progress is tracked on the decompressed content
+      return BulkChunkReader.open(scriptFile.getName(), ScriptFile.asByteSource(scriptFile), this.bulkMaxActions, this.bulkMaxBytes, resumeFrom);
+    }
+    return BulkChunkReader.open(scriptFile, this.bulkMaxActions, this.bulkMaxBytes, resumeFrom);
   }
 
   public boolean indexScript(JSONObject scriptJson) throws IOException {
-    HttpPost request = new HttpPost(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "?refresh=true");
-    StringEntity entity = new StringEntity(scriptJson.toJSONString());
-    entity.setContentType("application/json");
-    request.setEntity(entity);
+    HttpPost request = new HttpPost(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + this.refreshPolicy.getParameter());
+    request.setEntity(createJsonEntity(scriptJson.toJSONString()));
     try (CloseableHttpResponse execute = this.client.execute(request)) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("indexScript, statusCode: " + statusCode);
-      String result = EntityUtils.toString(execute.getEntity());
-      System.out.println("indexScript, result: " + result);
+      LOGGER.debug("indexScript, statusCode: {}", statusCode);
+      logErrorResponse("indexScript", statusCode, execute);
       return statusCode == 200;
     }
   }
 
+  /**
+   * Writes the metadata of a script executed with {@link #executeBulk(File)}, possibly buffered until the next {@link #flushMetadata()}.
+   */
+  public void indexScript(File script, File baseDir, BulkResult result) throws IOException {
+    writeScript(createScriptJson(script, baseDir, result), null);
+  }
+
+  /**
+   * Writes the metadata of a script whose execution with {@link #executeBulk(File)} has thrown an error, as a failed script.
+   */
+  @SuppressWarnings("unchecked")
+  public void indexFailedScript(File script, File baseDir, Throwable error) throws IOException {
+    JSONObject scriptJson = createStartedScriptJson(script, baseDir);
+    scriptJson.put("checksum", ScriptFile.checksum(script, this.checksumAlgorithm));
+    scriptJson.put("checksumAlgorithm", this.checksumAlgorithm.getName());
+    JSONArray errors = new JSONArray();
+    errors.add(error.toString());
+    scriptJson.put("errors", errors);
+    writeScript(scriptJson, null);
+  }
+
+  /**
+   * Writes the buffered script metadata in a single bulk request.
+   */
+  public void flushMetadata() throws IOException {
+    if (this.pendingMetadataCount == 0) {
+      return;
+    }
+    HttpPost request = new HttpPost(this.uri + "/_bulk" + this.refreshPolicy.getParameter());
+    request.setEntity(createJsonEntity(this.pendingMetadata.toString()));
+    int count = this.pendingMetadataCount;
+    this.pendingMetadata.setLength(0);
+    this.pendingMetadataCount = 0;
+    try (CloseableHttpResponse execute = this.client.execute(request)) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      LOGGER.debug("flushMetadata, statusCode: {}, scripts: {}", statusCode, count);
+      BulkResult result = BulkResponseParser.parse(execute.getEntity().getContent(), MAX_ERROR_REASONS);
+      if (statusCode != 200 || !result.isSucceeded()) {
+        throw new RuntimeException("Unable to write script metadata, errors: " + result.getErrorReasons());
+      }
+    }
+  }
+
+  /**
+   * Ends a migration: writes the buffered script metadata then, with the end_of_run refresh policy, refreshes all the indices.
+   */
+  public void flush() throws IOException {
+    flushMetadata();
+    if (this.refreshPolicy == RefreshPolicy.END_OF_RUN) {
+      refresh("");
+    }
+  }
+
   public Long count() throws IOException {
     try (CloseableHttpResponse execute = this.client.execute(new HttpGet(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "/_search?size=0"))) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("count, statusCode: " + statusCode);
+      LOGGER.debug("count, statusCode: {}", statusCode);
       if (statusCode == 200) {
-        JSONParser jsonParser = new JSONParser();
-        JSONObject responseJson = (JSONObject) jsonParser.parse(EntityUtils.toString(execute.getEntity()));
-        return (Long) ((JSONObject) responseJson.get("hits")).get("total");
+        return ScriptMetadataParser.parseTotal(execute.getEntity().getContent());
       }
-      System.out.println("count, response: " + EntityUtils.toString(execute.getEntity()));
+      logErrorResponse("count", statusCode, execute);
       throw new RuntimeException("Unable to count executed scripts");
-    } catch (ParseException e) {
-      throw new RuntimeException("Unable to parse result", e);
     }
   }
 
+  /**
+   * @return The metadata of the first executed scripts, sorted by file name.
+   */
   public List<ScriptMetadata> list(Long size) throws IOException {
-    try (CloseableHttpResponse execute = this.client.execute(new HttpGet(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "/_search?size=" + size + "&sort=fileName:asc"))) {
-      int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("count, statusCode: " + statusCode);
-      if (statusCode == 200) {
-        JSONParser jsonParser = new JSONParser();
-        JSONObject responseJson = (JSONObject) jsonParser.parse(EntityUtils.toString(execute.getEntity()));
-        JSONArray hits = (JSONArray) ((JSONObject) responseJson.get("hits")).get("hits");
-        List<ScriptMetadata> result = new ArrayList<>();
-        for (Object hit : hits) {
-          JSONObject hitJSON = (JSONObject) hit;
-          result.add(ScriptMetadata.fromJSON(hitJSON));
-        }
-        return result;
+    List<ScriptMetadata> result = new ArrayList<>();
+    try (ScriptMetadataIterator iterator = iterate()) {
+      while (result.size() < size && iterator.hasNext()) {
+        result.add(iterator.next());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Loads the metadata of all the executed scripts in a single scrolled pass, hits being parsed one at a time.
+   */
+  public MigrationState loadState() throws IOException {
+    // Read your writes, metadata written without refresh must be visible
+    flushMetadata();
+    if (this.refreshPolicy == RefreshPolicy.NONE || this.refreshPolicy == RefreshPolicy.END_OF_RUN) {
+      refresh("/" + this.flamingoIndexName);
+    }
+    List<ScriptMetadata> scripts = new ArrayList<>();
+    try (ScriptMetadataIterator iterator = iterate()) {
+      while (iterator.hasNext()) {
+        scripts.add(iterator.next());
       }
-      throw new RuntimeException("Unable to count executed scripts");
-    } catch (ParseException e) {
-      throw new RuntimeException("Unable to parse result", e);
     }
+    return new MigrationState(scripts);
+  }
+
+  /**
+   * @return A lazy iterator over the metadata of all the executed scripts, sorted by file name. It must be closed if not fully consumed.
+   */
+  public ScriptMetadataIterator iterate() {
+    return iterate(SCROLL_SIZE);
+  }
+
+  /**
+   * @param pageSize
+   *         : Number of hits fetched per scroll request.
+   */
+  public ScriptMetadataIterator iterate(int pageSize) {
+    String searchUri = this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName
+        + "/_search?scroll=" + SCROLL_KEEP_ALIVE + "&size=" + pageSize + "&sort=fileName:asc";
+    return new ScriptMetadataIterator(this.client, this.uri, searchUri, SCROLL_KEEP_ALIVE, this.logMaxBodyLength);
   }
 
   public boolean scriptExists(String fileName) throws IOException {
     return searchScript(fileName) != null;
   }
 
+  /**
+   * Writes the script metadata, with the given id if not null, directly or in the next metadata batch.
+   */
+  @SuppressWarnings("unchecked")
+  private void writeScript(JSONObject scriptJson, String id) throws IOException {
+    if (this.metadataBatchSize <= 1) {
+      if (id == null) {
+        indexScript(scriptJson);
+      } else {
+        updateScript(scriptJson, id);
+      }
+      return;
+    }
+    JSONObject metadata = new JSONObject();
+    metadata.put("_index", this.flamingoIndexName);
+    metadata.put("_type", this.flamingoTypeName);
+    if (id != null) {
+      metadata.put("_id", id);
+    }
+    JSONObject action = new JSONObject();
+    action.put("index", metadata);
+    this.pendingMetadata.append(action.toJSONString()).append('\n').append(scriptJson.toJSONString()).append('\n');
+    this.pendingMetadataCount++;
+    if (this.pendingMetadataCount >= this.metadataBatchSize) {
+      flushMetadata();
+    }
+  }
+
+  private void refresh(String indexPath) throws IOException {
+    try (CloseableHttpResponse execute = this.client.execute(new HttpPost(this.uri + indexPath + "/_refresh"))) {
+      int statusCode = execute.getStatusLine().getStatusCode();
+      EntityUtils.consume(execute.getEntity());
+      LOGGER.debug("refresh, statusCode: {}", statusCode);
+    }
+  }
+
   private boolean updateScript(JSONObject scriptJson, String id) throws IOException {
-    HttpPut request = new HttpPut(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "/" + id + "?refresh=true");
-    StringEntity entity = new StringEntity(scriptJson.toJSONString());
-    entity.setContentType("application/json");
-    request.setEntity(entity);
+    HttpPut request = new HttpPut(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "/" + id + this.refreshPolicy.getParameter());
+    request.setEntity(createJsonEntity(scriptJson.toJSONString()));
     try (CloseableHttpResponse execute = this.client.execute(request)) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("updateScript, statusCode: " + statusCode);
-      String result = EntityUtils.toString(execute.getEntity());
-      System.out.println("updateScript, result: " + result);
+      LOGGER.debug("updateScript, statusCode: {}", statusCode);
+      logErrorResponse("updateScript", statusCode, execute);
       return statusCode == 200;
     }
   }
 
-  private JSONObject searchScript(String fileName) throws IOException {
+  private CheckpointListener createCheckpointListener(final String id) {
+    return new CheckpointListener() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public void onCheckpoint(BulkProgress progress) throws IOException {
+        JSONObject doc = new JSONObject();
+        doc.put("progress", createProgressJson(progress));
+        JSONObject update = new JSONObject();
+        update.put("doc", doc);
+        HttpPost request = new HttpPost(uri + "/" + flamingoIndexName + "/" + flamingoTypeName + "/" + id + "/_update");
+        request.setEntity(createJsonEntity(update.toJSONString()));
+        try (CloseableHttpResponse execute = client.execute(request)) {
+          int statusCode = execute.getStatusLine().getStatusCode();
+          EntityUtils.consume(execute.getEntity());
+          LOGGER.debug("checkpoint, statusCode: {}, {}", statusCode, progress);
+        }
+      }
+    };
+  }
+
+  private ScriptMetadata searchScript(String fileName) throws IOException {
     try (CloseableHttpResponse execute = this.client.execute(new HttpGet(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "/_search?q=fileName:" + fileName))) {
       int statusCode = execute.getStatusLine().getStatusCode();
-      System.out.println("searchScript, statusCode: " + statusCode);
+      LOGGER.debug("searchScript, statusCode: {}", statusCode);
       if (statusCode == 200) {
-        String responseContent = EntityUtils.toString(execute.getEntity());
-        return getFirstHit(responseContent);
+        return getFirstHit(execute);
       }
-      throw null;
+      throw new RuntimeException("Unable to search script " + fileName);
+    }
+  }
+
+  /**
+   * Logs the beginning of an error response at debug level, the response is released otherwise without being read.
+   */
+  private void logErrorResponse(String method, int statusCode, CloseableHttpResponse response) throws IOException {
+    if (statusCode >= 300 && LOGGER.isDebugEnabled()) {
+      LOGGER.debug("{}, response: {}", method, ResponseBodies.abbreviate(response.getEntity(), this.logMaxBodyLength));
+    } else {
+      EntityUtils.consume(response.getEntity());
     }
   }
 
@@ -262,6 +536,8 @@ public final class ScriptManager {
     String username = settings.getUsername();
     String password = settings.getPassword();
     String protocol = settings.getProtocol();
+    RegistryBuilder<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory());
     if ("https".equals(protocol)) {
       SSLContextBuilder builder = new SSLContextBuilder();
       builder.loadTrustMaterial(null, new TrustStrategy() {
@@ -271,55 +547,87 @@ public final class ScriptManager {
         }
       });
       SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(builder.build());
-      httpClientBuilder.setSSLSocketFactory(sslsf);
+      socketFactories.register("https", sslsf);
     }
     if (!Strings.isNullOrEmpty(username) && !Strings.isNullOrEmpty(password)) {
       CredentialsProvider credsProvider = new BasicCredentialsProvider();
       credsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
       httpClientBuilder.setDefaultCredentialsProvider(credsProvider);
     }
+    // Keep enough pooled connections for concurrent bulk chunks of concurrent scripts, plus one for metadata requests
+    int maxConnections = Math.max(settings.getHttpMaxConnectionsPerRoute(), settings.getScriptConcurrency() * settings.getBulkConcurrency() + 1);
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactories.build());
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    connectionManager.setMaxTotal(maxConnections);
+    httpClientBuilder.setConnectionManager(connectionManager);
+    httpClientBuilder.setDefaultRequestConfig(RequestConfig.custom()
+        .setConnectTimeout(settings.getHttpConnectTimeout())
+        .setSocketTimeout(settings.getHttpSocketTimeout())
+        .build());
+    final long keepAlive = settings.getHttpKeepAlive();
+    httpClientBuilder.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long duration = super.getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : keepAlive;
+      }
+    });
+    // Close idle and expired connections in the background, before the server closes them
+    httpClientBuilder.evictExpiredConnections();
+    httpClientBuilder.evictIdleConnections(settings.getHttpIdleTimeout(), TimeUnit.MILLISECONDS);
+    HttpMetricsInterceptor metricsInterceptor = new HttpMetricsInterceptor(this.metrics);
+    httpClientBuilder.addInterceptorLast((HttpRequestInterceptor) metricsInterceptor);
+    httpClientBuilder.addInterceptorFirst((HttpResponseInterceptor) metricsInterceptor);
     return httpClientBuilder.build();
   }
 
   @SuppressWarnings("unchecked")
-  private JSONObject createScriptJson(File script, File baseDir, boolean succeeded) throws IOException {
+  private JSONObject createScriptJson(File script, File baseDir, BulkResult result) throws IOException {
     JSONObject jsonObject = new JSONObject();
-    jsonObject.put("checksum", Files.hash(script, Hashing.md5()).toString());
-    final String scriptName =  StringUtils.removeStart(script.getCanonicalPath(), baseDir.getCanonicalPath() + File.separator).replaceAll("\\\\", "/");
-    jsonObject.put("fileName", scriptName);
+    jsonObject.put("checksum", ScriptFile.checksum(script, this.checksumAlgorithm));
+    jsonObject.put("checksumAlgorithm", this.checksumAlgorithm.getName());
+    jsonObject.put("fileName", ScriptFile.getScriptName(script, baseDir));
     jsonObject.put("executedDate", DateTime.now().toString(ISODateTimeFormat.dateHourMinuteSecondMillis()));
-    jsonObject.put("succeeded", succeeded);
+    jsonObject.put("succeeded", result.isSucceeded());
+    jsonObject.put("failedItems", result.getFailedItems());
+    JSONArray errors = new JSONArray();
+    errors.addAll(result.getErrorReasons());
+    jsonObject.put("errors", errors);
+    if (result.getProgress() != null) {
+      jsonObject.put("progress", createProgressJson(result.getProgress()));
+    }
     return jsonObject;
   }
 
-  private JSONObject getFirstHit(String responseContent) {
-    try {
-      JSONParser jsonParser = new JSONParser();
-      JSONObject jsonObject = (JSONObject) jsonParser.parse(responseContent);
-      JSONArray hits = (JSONArray) ((JSONObject) jsonObject.get("hits")).get("hits");
-      if (hits.isEmpty()) {
-        return null;
-      }
-      return (JSONObject) hits.get(0);
-    } catch (ParseException e) {
-      throw new RuntimeException("Unable to parse result", e);
-    }
+  @SuppressWarnings("unchecked")
+  private JSONObject createStartedScriptJson(File script, File baseDir) throws IOException {
+    JSONObject jsonObject = new JSONObject();
+    jsonObject.put("fileName", ScriptFile.getScriptName(script, baseDir));
+    jsonObject.put("executedDate", DateTime.now().toString(ISODateTimeFormat.dateHourMinuteSecondMillis()));
+    jsonObject.put("succeeded", false);
+    return jsonObject;
   }
 
-  private HttpPost createSearchRequest(String queryFile) throws IOException {
-    HttpPost request = new HttpPost(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "/_search");
-    return createRequestFormResource(queryFile, request);
+  @SuppressWarnings("unchecked")
+  private static JSONObject createProgressJson(BulkProgress progress) {
+    JSONObject jsonObject = new JSONObject();
+    jsonObject.put("offset", progress.getOffset());
+    jsonObject.put("line", progress.getLine());
+    jsonObject.put("checksum", progress.getChecksum());
+    return jsonObject;
   }
 
-  private HttpPost createBulkRequest(File scriptFile) throws IOException {
-    HttpPost request = new HttpPost(this.uri + "/_bulk?refresh=true");
-    return createRequestFormFile(scriptFile, request);
+  /**
+   * @return The first hit of the search response, null if there is none. The other hits are skipped.
+   */
+  private static ScriptMetadata getFirstHit(CloseableHttpResponse response) throws IOException {
+    List<ScriptMetadata> hits = ScriptMetadataParser.parseHits(response.getEntity().getContent(), 1);
+    return hits.isEmpty() ? null : hits.get(0);
   }
 
-  private HttpPost createRequestFormFile(File scriptFile, HttpPost request) throws IOException {
-    String jsonContent = Files.toString(scriptFile, Charsets.UTF_8);
-    request.setEntity(createJsonEntity(jsonContent));
-    return request;
+  private HttpPost createSearchRequest(String queryFile) throws IOException {
+    HttpPost request = new HttpPost(this.uri + "/" + this.flamingoIndexName + "/" + this.flamingoTypeName + "/_search");
+    return createRequestFormResource(queryFile, request);
   }
 
   private HttpPost createRequestFormResource(String scriptFile, HttpPost request) throws IOException {
@@ -329,9 +637,8 @@ public final class ScriptManager {
     return request;
   }
 
-  private StringEntity createJsonEntity(String jsonContent) throws UnsupportedEncodingException {
-    StringEntity jsonEntity = new StringEntity(jsonContent);
-    jsonEntity.setContentType("application/json");
-    return jsonEntity;
+  private static StringEntity createJsonEntity(String jsonContent) {
+    // Encoded as UTF-8, error reasons of the script metadata may hold any character
+    return new StringEntity(jsonContent, ContentType.APPLICATION_JSON);
   }
 }
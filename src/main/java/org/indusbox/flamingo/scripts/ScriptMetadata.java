@@ -1,16 +1,17 @@
 package org.indusbox.flamingo.scripts;
 
+import org.indusbox.flamingo.bulk.BulkProgress;
 import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
-import org.json.simple.JSONObject;
 
 public class ScriptMetadata {
 
   private String id;
   private String fileName;
   private String checksum;
+  private String checksumAlgorithm;
   private DateTime executedDate;
   private boolean succeeded;
+  private BulkProgress progress;
 
   public ScriptMetadata(String id, String fileName, String checksum, DateTime executedDate, boolean succeeded) {
     this.id = id;
@@ -20,16 +21,6 @@ public class ScriptMetadata {
     this.succeeded = succeeded;
   }
 
-  public static ScriptMetadata fromJSON(JSONObject scriptJSON) {
-    return new ScriptMetadata(
-        (String) scriptJSON.get("_id"),
-        (String) ((JSONObject) scriptJSON.get("_source")).get("fileName"),
-        (String) ((JSONObject) scriptJSON.get("_source")).get("checksum"),
-        DateTime.parse((String) ((JSONObject) scriptJSON.get("_source")).get("executedDate"), ISODateTimeFormat.dateHourMinuteSecondMillis()),
-        (Boolean) ((JSONObject) scriptJSON.get("_source")).get("succeeded")
-    );
-  }
-
   public String getId() {
     return id;
   }
@@ -54,6 +45,17 @@ public class ScriptMetadata {
     this.checksum = checksum;
   }
 
+  /**
+   * @return Name of the {@link ChecksumAlgorithm} of the checksum, or null for MD5 checksums recorded before the algorithm was recorded.
+   */
+  public String getChecksumAlgorithm() {
+    return checksumAlgorithm;
+  }
+
+  public void setChecksumAlgorithm(String checksumAlgorithm) {
+    this.checksumAlgorithm = checksumAlgorithm;
+  }
+
   public DateTime getExecutedDate() {
     return executedDate;
   }
@@ -69,4 +71,15 @@ public class ScriptMetadata {
   public void setSucceeded(boolean succeeded) {
     this.succeeded = succeeded;
   }
+
+  /**
+   * @return Progress of the script execution, or null if it has not been recorded.
+   */
+  public BulkProgress getProgress() {
+    return progress;
+  }
+
+  public void setProgress(BulkProgress progress) {
+    this.progress = progress;
+  }
 }
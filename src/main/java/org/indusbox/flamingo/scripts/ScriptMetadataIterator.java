@@ -0,0 +1,170 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.indusbox.flamingo.utils.ResponseBodies;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Iterates over the executed scripts metadata sorted by file name, page by page with a scroll, so that the number of scripts
+ * is not bounded by the index max result window.
+ * Hits are parsed one at a time from the response stream, only the current hit is held in memory.
+ * The iterator must be closed to release the scroll if it is not fully consumed.
+ */
+public class ScriptMetadataIterator extends AbstractIterator<ScriptMetadata> implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScriptMetadataIterator.class);
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final CloseableHttpClient client;
+  private final String uri;
+  private final String searchUri;
+  private final String scrollKeepAlive;
+  private final int logMaxBodyLength;
+  private String scrollId;
+  private CloseableHttpResponse response;
+  private JsonParser parser;
+  private boolean firstPage = true;
+  private long total;
+  private long read;
+  private int pageHits;
+
+  /**
+   * @param searchUri
+   *         : Search of the script metadata sorted by file name, with the page size and scroll parameters.
+   * @param logMaxBodyLength
+   *         : Maximum number of bytes of an error response logged.
+   */
+  ScriptMetadataIterator(CloseableHttpClient client, String uri, String searchUri, String scrollKeepAlive, int logMaxBodyLength) {
+    this.client = client;
+    this.uri = uri;
+    this.searchUri = searchUri;
+    this.scrollKeepAlive = scrollKeepAlive;
+    this.logMaxBodyLength = logMaxBodyLength;
+  }
+
+  @Override
+  protected ScriptMetadata computeNext() {
+    try {
+      while (true) {
+        if (this.parser == null) {
+          if (!this.firstPage && (this.pageHits == 0 || this.read >= this.total)) {
+            close();
+            return endOfData();
+          }
+          openPage();
+        }
+        if (this.parser != null && this.parser.nextToken() == JsonToken.START_OBJECT) {
+          this.read++;
+          this.pageHits++;
+          return ScriptMetadataParser.parseHit(this.parser);
+        }
+        // End of the page
+        closePage();
+      }
+    } catch (IOException e) {
+      try {
+        close();
+      } catch (IOException closeException) {
+        e.addSuppressed(closeException);
+      }
+      throw new RuntimeException("Unable to list executed scripts", e);
+    }
+  }
+
+  private void openPage() throws IOException {
+    HttpUriRequest request;
+    if (this.firstPage) {
+      request = new HttpGet(this.searchUri);
+    } else {
+      HttpPost scrollRequest = new HttpPost(this.uri + "/_search/scroll?scroll=" + this.scrollKeepAlive);
+      scrollRequest.setEntity(new StringEntity(this.scrollId, Charsets.UTF_8));
+      request = scrollRequest;
+    }
+    this.firstPage = false;
+    this.pageHits = 0;
+    this.response = this.client.execute(request);
+    int statusCode = this.response.getStatusLine().getStatusCode();
+    LOGGER.debug("listScripts, statusCode: {}", statusCode);
+    if (statusCode != 200) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("listScripts, response: {}", ResponseBodies.abbreviate(this.response.getEntity(), this.logMaxBodyLength));
+      }
+      closePage();
+      throw new RuntimeException("Unable to list executed scripts");
+    }
+    this.parser = JSON_FACTORY.createParser(this.response.getEntity().getContent());
+    if (this.parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new IOException("Unable to parse search response, JSON object expected");
+    }
+    // Move to the hits array: { "_scroll_id" : "...", ..., "hits" : { "total" : 10, ..., "hits" : [
+    while (this.parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = this.parser.getCurrentName();
+      this.parser.nextToken();
+      if ("_scroll_id".equals(field)) {
+        this.scrollId = this.parser.getText();
+      } else if ("hits".equals(field)) {
+        while (this.parser.nextToken() == JsonToken.FIELD_NAME) {
+          String hitsField = this.parser.getCurrentName();
+          this.parser.nextToken();
+          if ("total".equals(hitsField)) {
+            this.total = this.parser.getLongValue();
+          } else if ("hits".equals(hitsField)) {
+            return;
+          } else {
+            this.parser.skipChildren();
+          }
+        }
+      } else {
+        this.parser.skipChildren();
+      }
+    }
+    // No hits
+    closePage();
+  }
+
+  private void closePage() throws IOException {
+    if (this.parser != null) {
+      this.parser.close();
+      this.parser = null;
+    }
+    if (this.response != null) {
+      EntityUtils.consume(this.response.getEntity());
+      this.response.close();
+      this.response = null;
+    }
+  }
+
+  /**
+   * Releases the current page and the scroll.
+   */
+  @Override
+  public void close() throws IOException {
+    closePage();
+    this.firstPage = false;
+    this.pageHits = 0;
+    if (this.scrollId != null) {
+      String scrollId = this.scrollId;
+      this.scrollId = null;
+      try (CloseableHttpResponse execute = this.client.execute(new HttpDelete(this.uri + "/_search/scroll/" + scrollId))) {
+        EntityUtils.consume(execute.getEntity());
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.indusbox.flamingo.bulk.BulkProgress;
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming parser of the script metadata hits returned by Elasticsearch, without building a JSON tree.
+ */
+public final class ScriptMetadataParser {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private ScriptMetadataParser() {
+  }
+
+  /**
+   * @param content
+   *         : Search response body, read as a stream.
+   * @param maxHits
+   *         : Maximum number of hits parsed, the next ones are skipped.
+   */
+  public static List<ScriptMetadata> parseHits(InputStream content, int maxHits) throws IOException {
+    List<ScriptMetadata> hits = new ArrayList<>();
+    parseSearchResponse(content, maxHits, hits);
+    return hits;
+  }
+
+  /**
+   * @return The total number of hits of a search response, whose hits are skipped.
+   */
+  public static long parseTotal(InputStream content) throws IOException {
+    return parseSearchResponse(content, 0, null);
+  }
+
+  /**
+   * Reads the total number of hits and the first hits of a search response, every other field is skipped.
+   */
+  private static long parseSearchResponse(InputStream content, int maxHits, List<ScriptMetadata> hits) throws IOException {
+    long total = 0;
+    try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Unable to parse search response, JSON object expected");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if (!"hits".equals(field)) {
+          parser.skipChildren();
+          continue;
+        }
+        // { "hits" : { "total" : 10, "max_score" : null, "hits" : [ ... ] } }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String hitsField = parser.getCurrentName();
+          parser.nextToken();
+          if ("total".equals(hitsField)) {
+            total = parser.getLongValue();
+          } else if ("hits".equals(hitsField)) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+              if (hits != null && hits.size() < maxHits) {
+                hits.add(parseHit(parser));
+              } else {
+                parser.skipChildren();
+              }
+            }
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * @param parser
+   *         : Parser positioned on the start of a hit object. It is left on the end of the hit object.
+   */
+  public static ScriptMetadata parseHit(JsonParser parser) throws IOException {
+    String id = null;
+    ScriptMetadata scriptMetadata = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "_id":
+          id = parser.getText();
+          break;
+        case "_source":
+          scriptMetadata = parseSource(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    if (scriptMetadata == null) {
+      throw new IOException("Unable to parse script metadata, _source is missing for " + id);
+    }
+    scriptMetadata.setId(id);
+    return scriptMetadata;
+  }
+
+  private static ScriptMetadata parseSource(JsonParser parser) throws IOException {
+    String fileName = null;
+    String checksum = null;
+    String checksumAlgorithm = null;
+    DateTime executedDate = null;
+    boolean succeeded = false;
+    BulkProgress progress = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "fileName":
+          fileName = parser.getText();
+          break;
+        case "checksum":
+          checksum = parser.getText();
+          break;
+        case "checksumAlgorithm":
+          checksumAlgorithm = parser.getText();
+          break;
+        case "executedDate":
+          executedDate = DateTime.parse(parser.getText(), ISODateTimeFormat.dateHourMinuteSecondMillis());
+          break;
+        case "succeeded":
+          succeeded = parser.getBooleanValue();
+          break;
+        case "progress":
+          progress = parseProgress(parser);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    ScriptMetadata scriptMetadata = new ScriptMetadata(null, fileName, checksum, executedDate, succeeded);
+    scriptMetadata.setChecksumAlgorithm(checksumAlgorithm);
+    scriptMetadata.setProgress(progress);
+    return scriptMetadata;
+  }
+
+  private static BulkProgress parseProgress(JsonParser parser) throws IOException {
+    long offset = 0;
+    long line = 0;
+    String checksum = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      switch (field) {
+        case "offset":
+          offset = parser.getLongValue();
+          break;
+        case "line":
+          line = parser.getLongValue();
+          break;
+        case "checksum":
+          checksum = parser.getText();
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return new BulkProgress(offset, line, checksum);
+  }
+}
@@ -0,0 +1,151 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Scans a scripts directory, at any depth, in a single walkFileTree pass. Script attributes are those read by the walk.
+ * Scripts and directories must start with an index, hidden files and directories are ignored.
+ * With the manifest of the previous scan, a directory whose modification time is unchanged is not listed again:
+ * its scripts are taken from the manifest, and only their attributes are read.
+ */
+final class ScriptScanner extends SimpleFileVisitor<Path> {
+
+  private static final EnumSet<FileVisitOption> OPTIONS = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+
+  private final Path root;
+  private final InventoryManifest previousManifest;
+  private final InventoryManifest manifest = new InventoryManifest();
+  private final List<ScannedScript> scripts = new ArrayList<>();
+  private final Deque<Path> directoryPaths = new ArrayDeque<>();
+  private final Deque<InventoryManifest.Directory> directories = new ArrayDeque<>();
+
+  private ScriptScanner(Path root, InventoryManifest previousManifest) {
+    this.root = root;
+    this.previousManifest = previousManifest;
+  }
+
+  /**
+   * @param previousManifest
+   *         : Manifest of the previous scan, may be null.
+   * @return A scanner holding the scripts sorted by path, and the manifest of this scan.
+   */
+  static ScriptScanner scan(Path root, InventoryManifest previousManifest) throws IOException {
+    ScriptScanner scanner = new ScriptScanner(root, previousManifest);
+    Files.walkFileTree(root, OPTIONS, Integer.MAX_VALUE, scanner);
+    Collections.sort(scanner.scripts, new Comparator<ScannedScript>() {
+      @Override
+      public int compare(ScannedScript o1, ScannedScript o2) {
+        return o1.path.toString().compareTo(o2.path.toString());
+      }
+    });
+    return scanner;
+  }
+
+  List<ScannedScript> getScripts() {
+    return scripts;
+  }
+
+  InventoryManifest getManifest() {
+    return manifest;
+  }
+
+  @Override
+  public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+    boolean isRoot = dir.equals(this.root);
+    if (!isRoot) {
+      String name = dir.getFileName().toString();
+      if (!ScriptFile.isScriptDirectoryName(name)) {
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+      if (dir.getParent().equals(this.directoryPaths.peek())) {
+        this.directories.peek().subDirectories.add(name);
+      }
+    }
+    String relativeName = relativeName(dir);
+    long lastModified = attrs.lastModifiedTime().toMillis();
+    InventoryManifest.Directory previous = this.previousManifest != null ? this.previousManifest.get(relativeName) : null;
+    if (previous != null && previous.lastModified == lastModified && replay(dir, previous)) {
+      this.manifest.put(relativeName, previous);
+      return FileVisitResult.SKIP_SUBTREE;
+    }
+    this.directoryPaths.push(dir);
+    this.directories.push(new InventoryManifest.Directory(lastModified));
+    return FileVisitResult.CONTINUE;
+  }
+
+  @Override
+  public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+    String name = file.getFileName().toString();
+    if (attrs.isRegularFile() && ScriptFile.isScriptFileName(name)) {
+      this.scripts.add(new ScannedScript(file, relativeName(file), attrs));
+      this.directories.peek().scripts.add(name);
+    }
+    return FileVisitResult.CONTINUE;
+  }
+
+  @Override
+  public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+    if (exc != null) {
+      throw exc;
+    }
+    this.directoryPaths.pop();
+    this.manifest.put(relativeName(dir), this.directories.pop());
+    return FileVisitResult.CONTINUE;
+  }
+
+  /**
+   * Adds the scripts of an unchanged directory from its previous listing, then scans its sub directories which may have changed.
+   *
+   * @return false if the previous listing is no longer valid.
+   */
+  private boolean replay(Path dir, InventoryManifest.Directory previous) throws IOException {
+    List<ScannedScript> directoryScripts = new ArrayList<>(previous.scripts.size());
+    for (String name : previous.scripts) {
+      Path file = dir.resolve(name);
+      try {
+        directoryScripts.add(new ScannedScript(file, relativeName(file), Files.readAttributes(file, BasicFileAttributes.class)));
+      } catch (NoSuchFileException e) {
+        return false;
+      }
+    }
+    this.scripts.addAll(directoryScripts);
+    for (String subDirectory : previous.subDirectories) {
+      Path subDirectoryPath = dir.resolve(subDirectory);
+      if (Files.isDirectory(subDirectoryPath)) {
+        Files.walkFileTree(subDirectoryPath, OPTIONS, Integer.MAX_VALUE, this);
+      }
+    }
+    return true;
+  }
+
+  private String relativeName(Path path) {
+    return this.root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+  }
+
+  static final class ScannedScript {
+
+    final Path path;
+    final String name;
+    final BasicFileAttributes attributes;
+
+    private ScannedScript(Path path, String name, BasicFileAttributes attributes) {
+      this.path = path;
+      this.name = name;
+      this.attributes = attributes;
+    }
+  }
+}
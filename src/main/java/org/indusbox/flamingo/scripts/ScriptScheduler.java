@@ -0,0 +1,214 @@
+package org.indusbox.flamingo.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.indusbox.flamingo.bulk.BulkIndexAnalyzer;
+import org.indusbox.flamingo.bulk.BulkResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes scripts concurrently when they write to disjoint indices.
+ * A script waits for the previous scripts writing to one of its indices, a script whose indices are unknown waits for all the previous scripts
+ * and is waited for by all the next ones. The order of the scripts is thus kept per index.
+ * Script metadata are indexed in the order of the scripts while they succeed. Once a script has failed, or thrown an error, only the
+ * scripts before it are still started: every completed script is then recorded, the first failed one as failed. The other failed scripts,
+ * after it, are not recorded and will be executed again by the next migration, as new scripts.
+ */
+public final class ScriptScheduler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScriptScheduler.class);
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setNameFormat("flamingo-script-%d")
+      .setDaemon(true)
+      .build();
+
+  private final ScriptManager scriptManager;
+  private final File scriptsDir;
+  private final int concurrency;
+  private final MigrationLock lock;
+
+  /**
+   * @param concurrency
+   *         : Maximum number of scripts executed at once.
+   */
+  public ScriptScheduler(ScriptManager scriptManager, File scriptsDir, int concurrency) {
+    this(scriptManager, scriptsDir, concurrency, null);
+  }
+
+  /**
+   * @param lock
+   *         : Migration lock checked before each script is started or recorded, may be null.
+   */
+  public ScriptScheduler(ScriptManager scriptManager, File scriptsDir, int concurrency, MigrationLock lock) {
+    this.scriptManager = scriptManager;
+    this.scriptsDir = scriptsDir;
+    this.concurrency = concurrency;
+    this.lock = lock;
+  }
+
+  /**
+   * @param scripts
+   *         : Scripts in execution order.
+   * @return The number of executed scripts.
+   */
+  public int execute(List<ScriptEntry> scripts) throws IOException {
+    int count = scripts.size();
+    List<List<Integer>> dependents = new ArrayList<>(count);
+    int[] pendingDependencies = new int[count];
+    buildDependencies(scripts, dependents, pendingDependencies);
+
+    PriorityQueue<Integer> ready = new PriorityQueue<>();
+    for (int i = 0; i < count; i++) {
+      if (pendingDependencies[i] == 0) {
+        ready.add(i);
+      }
+    }
+    BulkResult[] results = new BulkResult[count];
+    Throwable[] errors = new Throwable[count];
+    Map<Future<BulkResult>, Integer> running = new HashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.concurrency, count)), THREAD_FACTORY);
+    CompletionService<BulkResult> completionService = new ExecutorCompletionService<>(executor);
+    int firstFailed = count;
+    int recorded = 0;
+    try {
+      while (true) {
+        // Once a script has failed, only the scripts before it are started, they don't depend on it
+        while (running.size() < this.concurrency && !ready.isEmpty() && ready.peek() < firstFailed) {
+          checkLock();
+          final ScriptEntry script = scripts.get(ready.peek());
+          LOGGER.info("Executing script {}", script.getFile().getName());
+          running.put(completionService.submit(new Callable<BulkResult>() {
+            @Override
+            public BulkResult call() throws IOException {
+              return scriptManager.executeBulk(script.getFile());
+            }
+          }), ready.poll());
+        }
+        if (running.isEmpty()) {
+          break;
+        }
+        Future<BulkResult> future = completionService.take();
+        int position = running.remove(future);
+        try {
+          BulkResult result = future.get();
+          results[position] = result;
+          if (!result.isSucceeded()) {
+            firstFailed = Math.min(firstFailed, position);
+          }
+          for (int dependent : dependents.get(position)) {
+            if (--pendingDependencies[dependent] == 0) {
+              ready.add(dependent);
+            }
+          }
+        } catch (ExecutionException e) {
+          errors[position] = e.getCause();
+          firstFailed = Math.min(firstFailed, position);
+        }
+        // Record the scripts executed so far in order, up to the first failed one
+        while (recorded < count && results[recorded] != null && results[recorded].isSucceeded()) {
+          checkLock();
+          ScriptEntry script = scripts.get(recorded);
+          this.scriptManager.indexScript(script.getFile(), this.scriptsDir, results[recorded]);
+          recorded++;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while executing scripts");
+    } finally {
+      executor.shutdownNow();
+    }
+    if (firstFailed == count) {
+      return recorded;
+    }
+    // Every script before the failed one has been recorded, record the failed script then the scripts completed after it
+    for (int position = firstFailed; position < count; position++) {
+      ScriptEntry script = scripts.get(position);
+      if (position == firstFailed) {
+        checkLock();
+        if (results[position] != null) {
+          this.scriptManager.indexScript(script.getFile(), this.scriptsDir, results[position]);
+        } else {
+          this.scriptManager.indexFailedScript(script.getFile(), this.scriptsDir, errors[position]);
+        }
+      } else if (results[position] != null && results[position].isSucceeded()) {
+        checkLock();
+        this.scriptManager.indexScript(script.getFile(), this.scriptsDir, results[position]);
+      } else if (results[position] != null || errors[position] != null) {
+        LOGGER.error("Error while executing {} ({}), it will be executed again by the next migration", script.getFile().getName(),
+            results[position] != null ? results[position] : errors[position]);
+      }
+    }
+    this.scriptManager.flushMetadata();
+    ScriptEntry script = scripts.get(firstFailed);
+    BulkResult result = results[firstFailed];
+    if (result == null) {
+      Throwables.propagateIfPossible(errors[firstFailed], IOException.class);
+      throw new RuntimeException(errors[firstFailed]);
+    }
+    throw new RuntimeException("Abort migration. Error while executing " + script.getFile().getName() + " (" + result + "), errors: " + result.getErrorReasons());
+  }
+
+  private void checkLock() {
+    if (this.lock != null) {
+      this.lock.check();
+    }
+  }
+
+  private static void buildDependencies(List<ScriptEntry> scripts, List<List<Integer>> dependents, int[] pendingDependencies) throws IOException {
+    // Latest script writing to each index, and latest script writing to unknown indices
+    Map<String, Integer> latestByIndex = new HashMap<>();
+    int latestUnknown = -1;
+    for (int i = 0; i < scripts.size(); i++) {
+      dependents.add(new ArrayList<Integer>());
+      Set<String> indices;
+      try (InputStream in = ScriptFile.asByteSource(scripts.get(i).getFile()).openStream()) {
+        indices = BulkIndexAnalyzer.indices(in);
+      }
+      List<Integer> dependencies = new ArrayList<>();
+      if (indices == null) {
+        for (int j = Math.max(latestUnknown, 0); j < i; j++) {
+          dependencies.add(j);
+        }
+        latestUnknown = i;
+        latestByIndex.clear();
+      } else {
+        if (latestUnknown >= 0) {
+          dependencies.add(latestUnknown);
+        }
+        for (String index : indices) {
+          Integer latest = latestByIndex.put(index, i);
+          if (latest != null && !dependencies.contains(latest)) {
+            dependencies.add(latest);
+          }
+        }
+      }
+      for (int dependency : dependencies) {
+        dependents.get(dependency).add(i);
+      }
+      pendingDependencies[i] = dependencies.size();
+    }
+  }
+}
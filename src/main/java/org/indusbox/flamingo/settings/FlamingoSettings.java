@@ -2,6 +2,9 @@ package org.indusbox.flamingo.settings;
 
 import java.io.File;
 import java.util.Properties;
+import java.util.zip.Deflater;
+
+import org.indusbox.flamingo.metrics.MetricsRegistry;
 
 import com.google.common.base.Strings;
 
@@ -11,6 +14,21 @@ public class FlamingoSettings {
 
   private String indexName = ".flamingo";
 
+  private boolean checksumCache = false;
+  private File checksumCacheFile;
+  private String checksumAlgorithm = "md5";
+  private int checksumThreads = Runtime.getRuntime().availableProcessors();
+  private File inventoryManifestFile;
+  private boolean fingerprint = false;
+  private int scriptConcurrency = 1;
+  private boolean lock = false;
+  private long lockLeaseTime = 30000;
+  private long lockWaitTimeout = 600000;
+  private boolean metricsJmx = false;
+  private boolean metricsSummary = true;
+  private MetricsRegistry metricsRegistry;
+  private int logMaxBodyLength = 1024;
+
   private String protocol;
   private String hostName;
   private int port;
@@ -18,6 +36,28 @@ public class FlamingoSettings {
   private String username;
   private String password;
 
+  private boolean compression = false;
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  private int httpMaxConnectionsPerRoute = 2;
+  private int httpConnectTimeout = 10000;
+  private int httpSocketTimeout = 0;
+  private long httpIdleTimeout = 30000;
+  private long httpKeepAlive = 60000;
+
+  private int bulkMaxActions = 1000;
+  private long bulkMaxBytes = 5 * 1024 * 1024;
+  private int bulkConcurrency = 1;
+  private int bulkMaxRetries = 5;
+  private long bulkMaxTotalBackoff = 60000;
+  private boolean bulkAdaptive = false;
+  private long bulkTargetLatency = 1000;
+  private boolean bulkResume = false;
+  private long bulkCheckpointInterval = 10000;
+
+  private String refreshPolicy = "true";
+  private int metadataBatchSize = 1;
+
   public static FlamingoSettings fromConfig(Properties config) {
     FlamingoSettings flamingoSettings = new FlamingoSettings()
         .setScriptsDir(new File(config.getProperty("flamingo.scriptsDir")))
@@ -30,6 +70,130 @@ public class FlamingoSettings {
     if (!Strings.isNullOrEmpty(indexNameValue)) {
       flamingoSettings.setIndexName(indexNameValue);
     }
+    String checksumCacheValue = config.getProperty("flamingo.checksumCache");
+    if (!Strings.isNullOrEmpty(checksumCacheValue)) {
+      flamingoSettings.setChecksumCache(Boolean.valueOf(checksumCacheValue));
+    }
+    String checksumCacheFileValue = config.getProperty("flamingo.checksumCacheFile");
+    if (!Strings.isNullOrEmpty(checksumCacheFileValue)) {
+      flamingoSettings.setChecksumCacheFile(new File(checksumCacheFileValue));
+    }
+    String checksumAlgorithmValue = config.getProperty("flamingo.checksumAlgorithm");
+    if (!Strings.isNullOrEmpty(checksumAlgorithmValue)) {
+      flamingoSettings.setChecksumAlgorithm(checksumAlgorithmValue);
+    }
+    String checksumThreadsValue = config.getProperty("flamingo.checksumThreads");
+    if (!Strings.isNullOrEmpty(checksumThreadsValue)) {
+      flamingoSettings.setChecksumThreads(Integer.valueOf(checksumThreadsValue));
+    }
+    String inventoryManifestFileValue = config.getProperty("flamingo.inventoryManifestFile");
+    if (!Strings.isNullOrEmpty(inventoryManifestFileValue)) {
+      flamingoSettings.setInventoryManifestFile(new File(inventoryManifestFileValue));
+    }
+    String fingerprintValue = config.getProperty("flamingo.fingerprint");
+    if (!Strings.isNullOrEmpty(fingerprintValue)) {
+      flamingoSettings.setFingerprint(Boolean.valueOf(fingerprintValue));
+    }
+    String scriptConcurrencyValue = config.getProperty("flamingo.scriptConcurrency");
+    if (!Strings.isNullOrEmpty(scriptConcurrencyValue)) {
+      flamingoSettings.setScriptConcurrency(Integer.valueOf(scriptConcurrencyValue));
+    }
+    String lockValue = config.getProperty("flamingo.lock");
+    if (!Strings.isNullOrEmpty(lockValue)) {
+      flamingoSettings.setLock(Boolean.valueOf(lockValue));
+    }
+    String lockLeaseTimeValue = config.getProperty("flamingo.lock.leaseTime");
+    if (!Strings.isNullOrEmpty(lockLeaseTimeValue)) {
+      flamingoSettings.setLockLeaseTime(Long.valueOf(lockLeaseTimeValue));
+    }
+    String lockWaitTimeoutValue = config.getProperty("flamingo.lock.waitTimeout");
+    if (!Strings.isNullOrEmpty(lockWaitTimeoutValue)) {
+      flamingoSettings.setLockWaitTimeout(Long.valueOf(lockWaitTimeoutValue));
+    }
+    String metricsJmxValue = config.getProperty("flamingo.metrics.jmx");
+    if (!Strings.isNullOrEmpty(metricsJmxValue)) {
+      flamingoSettings.setMetricsJmx(Boolean.valueOf(metricsJmxValue));
+    }
+    String metricsSummaryValue = config.getProperty("flamingo.metrics.summary");
+    if (!Strings.isNullOrEmpty(metricsSummaryValue)) {
+      flamingoSettings.setMetricsSummary(Boolean.valueOf(metricsSummaryValue));
+    }
+    String logMaxBodyLengthValue = config.getProperty("flamingo.log.maxBodyLength");
+    if (!Strings.isNullOrEmpty(logMaxBodyLengthValue)) {
+      flamingoSettings.setLogMaxBodyLength(Integer.valueOf(logMaxBodyLengthValue));
+    }
+    String compressionValue = config.getProperty("elasticsearch.compression");
+    if (!Strings.isNullOrEmpty(compressionValue)) {
+      flamingoSettings.setCompression(Boolean.valueOf(compressionValue));
+    }
+    String compressionLevelValue = config.getProperty("elasticsearch.compressionLevel");
+    if (!Strings.isNullOrEmpty(compressionLevelValue)) {
+      flamingoSettings.setCompressionLevel(Integer.valueOf(compressionLevelValue));
+    }
+    String httpMaxConnectionsPerRouteValue = config.getProperty("elasticsearch.http.maxConnectionsPerRoute");
+    if (!Strings.isNullOrEmpty(httpMaxConnectionsPerRouteValue)) {
+      flamingoSettings.setHttpMaxConnectionsPerRoute(Integer.valueOf(httpMaxConnectionsPerRouteValue));
+    }
+    String httpConnectTimeoutValue = config.getProperty("elasticsearch.http.connectTimeout");
+    if (!Strings.isNullOrEmpty(httpConnectTimeoutValue)) {
+      flamingoSettings.setHttpConnectTimeout(Integer.valueOf(httpConnectTimeoutValue));
+    }
+    String httpSocketTimeoutValue = config.getProperty("elasticsearch.http.socketTimeout");
+    if (!Strings.isNullOrEmpty(httpSocketTimeoutValue)) {
+      flamingoSettings.setHttpSocketTimeout(Integer.valueOf(httpSocketTimeoutValue));
+    }
+    String httpIdleTimeoutValue = config.getProperty("elasticsearch.http.idleTimeout");
+    if (!Strings.isNullOrEmpty(httpIdleTimeoutValue)) {
+      flamingoSettings.setHttpIdleTimeout(Long.valueOf(httpIdleTimeoutValue));
+    }
+    String httpKeepAliveValue = config.getProperty("elasticsearch.http.keepAlive");
+    if (!Strings.isNullOrEmpty(httpKeepAliveValue)) {
+      flamingoSettings.setHttpKeepAlive(Long.valueOf(httpKeepAliveValue));
+    }
+    String bulkMaxActionsValue = config.getProperty("flamingo.bulk.maxActions");
+    if (!Strings.isNullOrEmpty(bulkMaxActionsValue)) {
+      flamingoSettings.setBulkMaxActions(Integer.valueOf(bulkMaxActionsValue));
+    }
+    String bulkMaxBytesValue = config.getProperty("flamingo.bulk.maxBytes");
+    if (!Strings.isNullOrEmpty(bulkMaxBytesValue)) {
+      flamingoSettings.setBulkMaxBytes(Long.valueOf(bulkMaxBytesValue));
+    }
+    String bulkConcurrencyValue = config.getProperty("flamingo.bulk.concurrency");
+    if (!Strings.isNullOrEmpty(bulkConcurrencyValue)) {
+      flamingoSettings.setBulkConcurrency(Integer.valueOf(bulkConcurrencyValue));
+    }
+    String bulkMaxRetriesValue = config.getProperty("flamingo.bulk.maxRetries");
+    if (!Strings.isNullOrEmpty(bulkMaxRetriesValue)) {
+      flamingoSettings.setBulkMaxRetries(Integer.valueOf(bulkMaxRetriesValue));
+    }
+    String bulkMaxTotalBackoffValue = config.getProperty("flamingo.bulk.maxTotalBackoff");
+    if (!Strings.isNullOrEmpty(bulkMaxTotalBackoffValue)) {
+      flamingoSettings.setBulkMaxTotalBackoff(Long.valueOf(bulkMaxTotalBackoffValue));
+    }
+    String bulkAdaptiveValue = config.getProperty("flamingo.bulk.adaptive");
+    if (!Strings.isNullOrEmpty(bulkAdaptiveValue)) {
+      flamingoSettings.setBulkAdaptive(Boolean.valueOf(bulkAdaptiveValue));
+    }
+    String bulkTargetLatencyValue = config.getProperty("flamingo.bulk.targetLatency");
+    if (!Strings.isNullOrEmpty(bulkTargetLatencyValue)) {
+      flamingoSettings.setBulkTargetLatency(Long.valueOf(bulkTargetLatencyValue));
+    }
+    String bulkResumeValue = config.getProperty("flamingo.bulk.resume");
+    if (!Strings.isNullOrEmpty(bulkResumeValue)) {
+      flamingoSettings.setBulkResume(Boolean.valueOf(bulkResumeValue));
+    }
+    String bulkCheckpointIntervalValue = config.getProperty("flamingo.bulk.checkpointInterval");
+    if (!Strings.isNullOrEmpty(bulkCheckpointIntervalValue)) {
+      flamingoSettings.setBulkCheckpointInterval(Long.valueOf(bulkCheckpointIntervalValue));
+    }
+    String refreshPolicyValue = config.getProperty("elasticsearch.refresh");
+    if (!Strings.isNullOrEmpty(refreshPolicyValue)) {
+      flamingoSettings.setRefreshPolicy(refreshPolicyValue);
+    }
+    String metadataBatchSizeValue = config.getProperty("flamingo.metadataBatchSize");
+    if (!Strings.isNullOrEmpty(metadataBatchSizeValue)) {
+      flamingoSettings.setMetadataBatchSize(Integer.valueOf(metadataBatchSizeValue));
+    }
     return flamingoSettings;
   }
 
@@ -51,6 +215,182 @@ public class FlamingoSettings {
     return this;
   }
 
+  public boolean isChecksumCache() {
+    return checksumCache;
+  }
+
+  /**
+   * Keeps the checksums of the scripts in a file, so that only new or modified scripts are read to verify their checksum.
+   */
+  public FlamingoSettings setChecksumCache(boolean checksumCache) {
+    this.checksumCache = checksumCache;
+    return this;
+  }
+
+  public File getChecksumCacheFile() {
+    return checksumCacheFile;
+  }
+
+  /**
+   * Location of the checksum cache. If not set, it is next to the inventory manifest file, or in the working directory without manifest.
+   * It should be outside the scripts directory, whose modification time would otherwise change on every migration.
+   */
+  public FlamingoSettings setChecksumCacheFile(File checksumCacheFile) {
+    this.checksumCacheFile = checksumCacheFile;
+    return this;
+  }
+
+  public String getChecksumAlgorithm() {
+    return checksumAlgorithm;
+  }
+
+  /**
+   * Algorithm of the checksums of the new scripts: "md5" (default), "sha256" or "murmur3_128".
+   * Executed scripts are always verified with the algorithm they have been recorded with.
+   */
+  public FlamingoSettings setChecksumAlgorithm(String checksumAlgorithm) {
+    this.checksumAlgorithm = checksumAlgorithm;
+    return this;
+  }
+
+  public int getChecksumThreads() {
+    return checksumThreads;
+  }
+
+  /**
+   * Number of executed scripts hashed at once to verify their checksum, the number of processors by default.
+   */
+  public FlamingoSettings setChecksumThreads(int checksumThreads) {
+    this.checksumThreads = checksumThreads;
+    return this;
+  }
+
+  public File getInventoryManifestFile() {
+    return inventoryManifestFile;
+  }
+
+  /**
+   * File keeping the listing of the scripts directories, so that unchanged directories are not listed again. Disabled if not set.
+   * It should be outside the scripts directory, whose modification time would otherwise change on every migration.
+   */
+  public FlamingoSettings setInventoryManifestFile(File inventoryManifestFile) {
+    this.inventoryManifestFile = inventoryManifestFile;
+    return this;
+  }
+
+  public boolean isFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Records a fingerprint of the applied scripts once they are all applied. A migration whose scripts match it has nothing to do,
+   * and stops after a single request. Best combined with the checksum cache, so that scripts are not read to compute the fingerprint.
+   */
+  public FlamingoSettings setFingerprint(boolean fingerprint) {
+    this.fingerprint = fingerprint;
+    return this;
+  }
+
+  public int getScriptConcurrency() {
+    return scriptConcurrency;
+  }
+
+  /**
+   * Number of scripts executed at once, 1 to execute them one after another.
+   * Scripts are executed concurrently only when they write to disjoint indices, as read from the _index of their actions.
+   * Their indices are read beforehand, in an extra pass over every new script, compressed scripts being decompressed for it.
+   * Scripts executed concurrently are not checkpointed, a failed script is executed again from the beginning.
+   */
+  public FlamingoSettings setScriptConcurrency(int scriptConcurrency) {
+    this.scriptConcurrency = scriptConcurrency;
+    return this;
+  }
+
+  public boolean isLock() {
+    return lock;
+  }
+
+  /**
+   * Holds a cluster-wide lock during the migration, so that migrations started at once on several instances are applied one at a time.
+   * A migration waiting for the lock checks the executed scripts again once it holds it.
+   */
+  public FlamingoSettings setLock(boolean lock) {
+    this.lock = lock;
+    return this;
+  }
+
+  public long getLockLeaseTime() {
+    return lockLeaseTime;
+  }
+
+  /**
+   * Time, in milliseconds, after which the lock of a migration which died can be taken over. The lease is renewed every third of it.
+   */
+  public FlamingoSettings setLockLeaseTime(long lockLeaseTime) {
+    this.lockLeaseTime = lockLeaseTime;
+    return this;
+  }
+
+  public long getLockWaitTimeout() {
+    return lockWaitTimeout;
+  }
+
+  /**
+   * Maximum time, in milliseconds, to wait for the lock before aborting the migration.
+   */
+  public FlamingoSettings setLockWaitTimeout(long lockWaitTimeout) {
+    this.lockWaitTimeout = lockWaitTimeout;
+    return this;
+  }
+
+  public boolean isMetricsJmx() {
+    return metricsJmx;
+  }
+
+  /**
+   * Exposes the migration metrics as an MBean, named org.indusbox.flamingo:type=Metrics, while the script manager is open.
+   */
+  public FlamingoSettings setMetricsJmx(boolean metricsJmx) {
+    this.metricsJmx = metricsJmx;
+    return this;
+  }
+
+  public boolean isMetricsSummary() {
+    return metricsSummary;
+  }
+
+  /**
+   * Prints the counters and timers of the migration at the end of the run.
+   */
+  public FlamingoSettings setMetricsSummary(boolean metricsSummary) {
+    this.metricsSummary = metricsSummary;
+    return this;
+  }
+
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsRegistry;
+  }
+
+  /**
+   * Registry the metrics are forwarded to, e.g. an adapter to the application metrics library. Not configurable from the configuration file.
+   */
+  public FlamingoSettings setMetricsRegistry(MetricsRegistry metricsRegistry) {
+    this.metricsRegistry = metricsRegistry;
+    return this;
+  }
+
+  public int getLogMaxBodyLength() {
+    return logMaxBodyLength;
+  }
+
+  /**
+   * Maximum number of bytes of an Elasticsearch error response logged, at debug level.
+   */
+  public FlamingoSettings setLogMaxBodyLength(int logMaxBodyLength) {
+    this.logMaxBodyLength = logMaxBodyLength;
+    return this;
+  }
+
   public String getProtocol() {
     return protocol;
   }
@@ -95,4 +435,218 @@ public class FlamingoSettings {
     this.password = password;
     return this;
   }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  /**
+   * Compresses bulk request bodies with gzip.
+   */
+  public FlamingoSettings setCompression(boolean compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Gzip compression level, from 1 (fastest) to 9 (best compression), or -1 for the default level.
+   */
+  public FlamingoSettings setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
+  public int getHttpMaxConnectionsPerRoute() {
+    return httpMaxConnectionsPerRoute;
+  }
+
+  /**
+   * Maximum number of pooled connections to Elasticsearch. The pool always allows one connection per concurrent bulk request, plus one.
+   */
+  public FlamingoSettings setHttpMaxConnectionsPerRoute(int httpMaxConnectionsPerRoute) {
+    this.httpMaxConnectionsPerRoute = httpMaxConnectionsPerRoute;
+    return this;
+  }
+
+  public int getHttpConnectTimeout() {
+    return httpConnectTimeout;
+  }
+
+  /**
+   * Timeout in milliseconds to establish a connection, 0 for no timeout.
+   */
+  public FlamingoSettings setHttpConnectTimeout(int httpConnectTimeout) {
+    this.httpConnectTimeout = httpConnectTimeout;
+    return this;
+  }
+
+  public int getHttpSocketTimeout() {
+    return httpSocketTimeout;
+  }
+
+  /**
+   * Timeout in milliseconds waiting for data, 0 for no timeout.
+   */
+  public FlamingoSettings setHttpSocketTimeout(int httpSocketTimeout) {
+    this.httpSocketTimeout = httpSocketTimeout;
+    return this;
+  }
+
+  public long getHttpIdleTimeout() {
+    return httpIdleTimeout;
+  }
+
+  /**
+   * Duration in milliseconds after which an idle pooled connection is closed.
+   */
+  public FlamingoSettings setHttpIdleTimeout(long httpIdleTimeout) {
+    this.httpIdleTimeout = httpIdleTimeout;
+    return this;
+  }
+
+  public long getHttpKeepAlive() {
+    return httpKeepAlive;
+  }
+
+  /**
+   * Duration in milliseconds a connection is kept alive, when Elasticsearch doesn't send a Keep-Alive header.
+   */
+  public FlamingoSettings setHttpKeepAlive(long httpKeepAlive) {
+    this.httpKeepAlive = httpKeepAlive;
+    return this;
+  }
+
+  public int getBulkMaxActions() {
+    return bulkMaxActions;
+  }
+
+  public FlamingoSettings setBulkMaxActions(int bulkMaxActions) {
+    this.bulkMaxActions = bulkMaxActions;
+    return this;
+  }
+
+  public long getBulkMaxBytes() {
+    return bulkMaxBytes;
+  }
+
+  public FlamingoSettings setBulkMaxBytes(long bulkMaxBytes) {
+    this.bulkMaxBytes = bulkMaxBytes;
+    return this;
+  }
+
+  public int getBulkConcurrency() {
+    return bulkConcurrency;
+  }
+
+  /**
+   * Number of chunks of a same script sent at once. Chunks are then applied in no particular order.
+   */
+  public FlamingoSettings setBulkConcurrency(int bulkConcurrency) {
+    this.bulkConcurrency = bulkConcurrency;
+    return this;
+  }
+
+  public int getBulkMaxRetries() {
+    return bulkMaxRetries;
+  }
+
+  /**
+   * Number of times items rejected by an overloaded cluster (429 or 503) are sent again.
+   */
+  public FlamingoSettings setBulkMaxRetries(int bulkMaxRetries) {
+    this.bulkMaxRetries = bulkMaxRetries;
+    return this;
+  }
+
+  public long getBulkMaxTotalBackoff() {
+    return bulkMaxTotalBackoff;
+  }
+
+  /**
+   * Maximum time, in milliseconds, spent waiting between retries of a chunk.
+   */
+  public FlamingoSettings setBulkMaxTotalBackoff(long bulkMaxTotalBackoff) {
+    this.bulkMaxTotalBackoff = bulkMaxTotalBackoff;
+    return this;
+  }
+
+  public boolean isBulkAdaptive() {
+    return bulkAdaptive;
+  }
+
+  /**
+   * Lets chunk size and concurrency adapt to the cluster, up to the configured bulk max bytes and concurrency.
+   */
+  public FlamingoSettings setBulkAdaptive(boolean bulkAdaptive) {
+    this.bulkAdaptive = bulkAdaptive;
+    return this;
+  }
+
+  public long getBulkTargetLatency() {
+    return bulkTargetLatency;
+  }
+
+  /**
+   * Bulk request round-trip time, in milliseconds, above which adaptive sizing shrinks the chunks.
+   */
+  public FlamingoSettings setBulkTargetLatency(long bulkTargetLatency) {
+    this.bulkTargetLatency = bulkTargetLatency;
+    return this;
+  }
+
+  public boolean isBulkResume() {
+    return bulkResume;
+  }
+
+  /**
+   * Checkpoints the progress of each script in the metadata index, and resumes a failed script where it stopped instead of
+   * executing it again from the beginning. Actions sent after the last checkpoint are sent again, so it only suits
+   * scripts whose actions can safely be applied twice (index, delete).
+   */
+  public FlamingoSettings setBulkResume(boolean bulkResume) {
+    this.bulkResume = bulkResume;
+    return this;
+  }
+
+  public long getBulkCheckpointInterval() {
+    return bulkCheckpointInterval;
+  }
+
+  /**
+   * Minimum time, in milliseconds, between two checkpoints of a script progress.
+   */
+  public FlamingoSettings setBulkCheckpointInterval(long bulkCheckpointInterval) {
+    this.bulkCheckpointInterval = bulkCheckpointInterval;
+    return this;
+  }
+
+  public String getRefreshPolicy() {
+    return refreshPolicy;
+  }
+
+  /**
+   * When written documents are made visible to search: true (refresh on every request), none, end_of_run (a single refresh at the end
+   * of the migration) or wait_for (Elasticsearch 5.0 or later). Executed scripts are always visible to the next migration.
+   */
+  public FlamingoSettings setRefreshPolicy(String refreshPolicy) {
+    this.refreshPolicy = refreshPolicy;
+    return this;
+  }
+
+  public int getMetadataBatchSize() {
+    return metadataBatchSize;
+  }
+
+  /**
+   * Number of script metadata buffered then written in a single bulk request. Metadata are always written before a failure is reported
+   * and at the end of the migration, but scripts whose metadata were still buffered when the migration was killed are executed again.
+   */
+  public FlamingoSettings setMetadataBatchSize(int metadataBatchSize) {
+    this.metadataBatchSize = metadataBatchSize;
+    return this;
+  }
 }
@@ -0,0 +1,37 @@
+package org.indusbox.flamingo.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads HTTP response bodies for logging, without copying more of them than will be logged.
+ */
+public class ResponseBodies {
+
+  private ResponseBodies() {
+    // default constructor, no instantiation.
+  }
+
+  /**
+   * Reads the beginning of the body and releases the rest of it.
+   *
+   * @param maxLength
+   *         : Maximum number of bytes read, a longer body is truncated.
+   * @return The beginning of the body, ending with "..." if it has been truncated.
+   */
+  public static String abbreviate(HttpEntity entity, int maxLength) throws IOException {
+    if (entity == null) {
+      return "";
+    }
+    try (InputStream content = entity.getContent()) {
+      byte[] head = ByteStreams.toByteArray(ByteStreams.limit(content, maxLength + 1L));
+      String body = new String(head, 0, Math.min(head.length, maxLength), Charsets.UTF_8);
+      return head.length > maxLength ? body + "..." : body;
+    }
+  }
+}
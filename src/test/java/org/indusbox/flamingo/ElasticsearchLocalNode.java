@@ -31,6 +31,7 @@ public class ElasticsearchLocalNode {
         .put("path.data", this.dataDirectory)
         .put("cluster.name", "test-cluster")
         .put("node.name", "test-node")
+        .put("http.compression", true)
         .build());
     nodeBuilder.local(true);
     this.node = nodeBuilder.node();
@@ -1,15 +1,31 @@
 package org.indusbox.flamingo;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.failBecauseExceptionWasNotThrown;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.indusbox.flamingo.metrics.MetricsRegistry;
+import org.indusbox.flamingo.scripts.ChecksumAlgorithm;
+import org.indusbox.flamingo.scripts.MigrationState;
+import org.indusbox.flamingo.scripts.ScriptFile;
+import org.indusbox.flamingo.scripts.ScriptManager;
+import org.indusbox.flamingo.scripts.ScriptMetadataIterator;
 import org.indusbox.flamingo.settings.FlamingoSettings;
 import org.junit.After;
 import org.junit.Before;
@@ -56,6 +72,203 @@ public class MigrationTest {
     assertThat(scriptsApplied).isEqualTo(2);
   }
 
+  @Test
+  public void should_apply_scripts_on_disjoint_indices_concurrently() throws Exception {
+    // 1.json and 3.json write to library, 2.json to orders
+    FlamingoSettings settings = createFlamingoSettings("library_13").setScriptConcurrency(2);
+    int scriptsApplied = Migration.migrate(settings);
+    assertThat(scriptsApplied).isEqualTo(3);
+    GetResponse book = client.prepareGet("library", "book", "1").get();
+    assertThat(book.getSource()).containsKeys("title", "author");
+    assertThat(client.prepareGet("orders", "order", "1").get().isExists()).isTrue();
+    client.admin().indices().prepareRefresh(".flamingo").get();
+    assertThat(client.prepareSearch(".flamingo").setQuery(QueryBuilders.termQuery("succeeded", true)).get().getHits().getTotalHits()).isEqualTo(3);
+    assertThat(Migration.migrate(settings)).isEqualTo(0);
+  }
+
+  @Test
+  public void should_record_the_scripts_completed_concurrently_with_a_failed_script() throws Exception {
+    // 1.json fails, 2.json writes to another index concurrently, 3.json waits for 1.json
+    FlamingoSettings settings = createFlamingoSettings("library_14").setScriptConcurrency(2);
+    try {
+      Migration.migrate(settings);
+      failBecauseExceptionWasNotThrown(RuntimeException.class);
+    } catch (RuntimeException e) {
+      assertThat(e).hasMessageContaining("Error while executing 1.json");
+    }
+    try (ScriptManager scriptManager = new ScriptManager(settings)) {
+      assertThat(scriptManager.loadState().getScripts()).extracting("fileName").containsExactly("1.json", "2.json");
+    }
+
+    client.prepareIndex("library", "book", "1").setSource("{ \"title\" : \"Do Androids Dream of Electric Sheep?\" }").get();
+    assertThat(Migration.migrate(settings)).isEqualTo(1);
+    assertThat(client.prepareGet("library", "book", "1").get().getSource()).containsKeys("title", "author");
+    assertThat(client.prepareGet("library", "book", "2").get().isExists()).isTrue();
+    // Not executed again
+    assertThat(client.prepareGet("orders", "order", "1").get().getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_record_the_scripts_completed_concurrently_with_a_script_throwing_an_error() throws Exception {
+    // 2.json is invalid and waits for 1.json, 3.json writes to another index concurrently
+    FlamingoSettings settings = createFlamingoSettings("library_15").setScriptConcurrency(2);
+    try {
+      Migration.migrate(settings);
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("missing source line");
+    }
+    try (ScriptManager scriptManager = new ScriptManager(settings)) {
+      MigrationState state = scriptManager.loadState();
+      assertThat(state.getScripts()).extracting("fileName").containsExactly("1.json", "2.json", "3.json");
+      assertThat(state.getFailedScripts()).extracting("fileName").containsExactly("2.json");
+    }
+    assertThat(client.prepareGet("orders", "order", "1").get().getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_batch_metadata_and_refresh_at_the_end_of_the_migration() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_4").setRefreshPolicy("end_of_run").setMetadataBatchSize(10);
+    assertThat(Migration.migrate(settings)).isEqualTo(2);
+    // Refreshed once at the end of the migration
+    assertThat(client.prepareSearch(".flamingo").get().getHits().getTotalHits()).isEqualTo(2);
+    assertThat(client.prepareSearch("library").get().getHits().getTotalHits()).isEqualTo(2);
+    assertThat(Migration.migrate(settings)).isEqualTo(0);
+  }
+
+  @Test
+  public void should_write_batched_metadata_of_a_failed_script() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_9").setRefreshPolicy("none").setMetadataBatchSize(10);
+    try {
+      Migration.migrate(settings);
+      failBecauseExceptionWasNotThrown(RuntimeException.class);
+    } catch (RuntimeException e) {
+      assertThat(e).hasMessageContaining("Error while executing 1.json");
+    }
+    // Visible to the next migration, without refresh
+    try (ScriptManager scriptManager = new ScriptManager(settings)) {
+      assertThat(scriptManager.loadState().getFailedScripts()).extracting("fileName").containsExactly("1.json");
+    }
+  }
+
+  @Test
+  public void should_apply_concurrent_migrations_one_at_a_time() throws Exception {
+    final FlamingoSettings settings = createFlamingoSettings("library_4").setLock(true).setLockLeaseTime(1000);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> migrations = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      migrations.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return Migration.migrate(settings);
+        }
+      }));
+    }
+    int scriptsApplied = 0;
+    for (Future<Integer> migration : migrations) {
+      scriptsApplied += migration.get();
+    }
+    executor.shutdown();
+    assertThat(scriptsApplied).isEqualTo(2);
+    assertThat(client.prepareGet("library", "book", "1").get().getVersion()).isEqualTo(1);
+    client.admin().indices().prepareRefresh(".flamingo").get();
+    assertThat(client.prepareSearch(".flamingo").setTypes("migration-metadata").get().getHits().getTotalHits()).isEqualTo(2);
+    assertThat(client.prepareGet(".flamingo", "migration-lock", "migration").get().isExists()).isFalse();
+  }
+
+  @Test
+  public void should_abort_the_migration_if_the_lock_is_taken_over() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_4").setLock(true).setLockLeaseTime(300);
+    settings.setMetricsRegistry(new MetricsRegistry() {
+      @Override
+      public void increment(String name, long amount) {
+        if ("scripts.executed".equals(name)) {
+          // Another migration takes the lock over while the first script is recorded, the heartbeat then loses it
+          client.prepareIndex(".flamingo", "migration-lock", "migration").setSource("{\"owner\":\"other\",\"expiresAt\":0}").get();
+          try {
+            Thread.sleep(1000);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+
+      @Override
+      public void record(String name, long nanos) {
+      }
+    });
+    try {
+      Migration.migrate(settings);
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("migration lock has been taken over");
+    }
+    assertThat(client.prepareGet("library", "book", "2").get().isExists()).isFalse();
+    assertThat(client.prepareGet(".flamingo", "migration-lock", "migration").get().getSourceAsMap()).containsEntry("owner", "other");
+  }
+
+  @Test
+  public void should_skip_the_migration_if_the_fingerprint_matches() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_4").setFingerprint(true);
+    assertThat(Migration.migrate(settings)).isEqualTo(2);
+    assertThat(client.prepareGet(".flamingo", "migration-fingerprint", "fingerprint").get().isExists()).isTrue();
+    // Executed scripts are not even listed, scripts would be applied again otherwise
+    client.admin().indices().prepareRefresh(".flamingo").get();
+    for (SearchHit hit : client.prepareSearch(".flamingo").setTypes("migration-metadata").get().getHits()) {
+      client.prepareDelete(".flamingo", "migration-metadata", hit.getId()).get();
+    }
+    assertThat(Migration.migrate(settings)).isEqualTo(0);
+    assertThat(client.prepareGet("library", "book", "1").get().getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_reuse_the_script_manager_across_migrations() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_2").setHttpMaxConnectionsPerRoute(1);
+    try (ScriptManager scriptManager = new ScriptManager(settings)) {
+      assertThat(Migration.migrate(settings, scriptManager)).isEqualTo(1);
+
+      settings = createFlamingoSettings("library_4");
+      assertThat(Migration.migrate(settings, scriptManager)).isEqualTo(1);
+      assertThat(client.prepareGet("library", "book", "2").get().isExists()).isTrue();
+      assertThat(scriptManager.getMetrics().getCounter("scripts.executed")).isEqualTo(2);
+      assertThat(scriptManager.getMetrics().getCounter("bulk.docs")).isPositive();
+      assertThat(scriptManager.getMetrics().getTimerCounts()).containsKeys("migration", "phase.scan", "phase.stateLoad", "phase.execute", "http.POST");
+    }
+  }
+
+  @Test
+  public void should_iterate_over_executed_scripts_page_by_page() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_4");
+    try (ScriptManager scriptManager = new ScriptManager(settings)) {
+      assertThat(Migration.migrate(settings, scriptManager)).isEqualTo(2);
+
+      List<String> fileNames = new ArrayList<>();
+      try (ScriptMetadataIterator iterator = scriptManager.iterate(1)) {
+        while (iterator.hasNext()) {
+          fileNames.add(iterator.next().getFileName());
+        }
+      }
+      assertThat(fileNames).containsExactly("1.json", "2.json");
+      assertThat(scriptManager.list(1L)).extracting("fileName").containsExactly("1.json");
+    }
+  }
+
+  @Test
+  public void should_verify_scripts_with_their_recorded_checksum_algorithm() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_2");
+    assertThat(Migration.migrate(settings)).isEqualTo(1);
+
+    // Scripts executed with MD5 checksums are still verified after switching to another algorithm
+    settings = createFlamingoSettings("library_4").setChecksumAlgorithm("sha256").setChecksumThreads(2);
+    assertThat(Migration.migrate(settings)).isEqualTo(1);
+    assertThat(Migration.migrate(settings)).isEqualTo(0);
+
+    Map<String, Object> secondScript = client.prepareSearch(".flamingo").setQuery(QueryBuilders.termQuery("fileName", "2.json")).get()
+        .getHits().getAt(0).getSource();
+    assertThat(secondScript.get("checksumAlgorithm")).isEqualTo("sha256");
+    assertThat(secondScript.get("checksum")).isEqualTo(ScriptFile.checksum(new File(settings.getScriptsDir(), "2.json"), ChecksumAlgorithm.SHA256));
+  }
+
   @Test
   public void should_apply_one_script_then_another_one() throws Exception {
     FlamingoSettings settings = createFlamingoSettings("library_2");
@@ -144,6 +357,104 @@ public class MigrationTest {
     assertThat(book1.getSource().get("title")).isEqualTo("In Search of Lost Time");
   }
 
+  @Test
+  public void should_apply_migration_script_in_multiple_chunks() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_7").setBulkMaxActions(2);
+    int scriptsApplied = Migration.migrate(settings);
+
+    assertThat(scriptsApplied).isEqualTo(1);
+    assertThat(client.prepareGet("library", "book", "1").get().isExists()).isTrue();
+    assertThat(client.prepareGet("library", "book", "2").get().isExists()).isFalse();
+    assertThat(client.prepareGet("library", "book", "3").get().isExists()).isTrue();
+    assertThat(client.prepareGet("library", "book", "4").get().isExists()).isTrue();
+  }
+
+  @Test
+  public void should_apply_migration_script_chunks_concurrently() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_8").setBulkMaxActions(1).setBulkConcurrency(3);
+    int scriptsApplied = Migration.migrate(settings);
+
+    assertThat(scriptsApplied).isEqualTo(1);
+    for (int i = 1; i <= 6; i++) {
+      assertThat(client.prepareGet("library", "book", String.valueOf(i)).get().isExists()).isTrue();
+    }
+  }
+
+  @Test
+  public void should_apply_migration_script_with_adaptive_bulk_sizing() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_8").setBulkMaxBytes(512).setBulkConcurrency(2).setBulkAdaptive(true);
+    int scriptsApplied = Migration.migrate(settings);
+
+    assertThat(scriptsApplied).isEqualTo(1);
+    for (int i = 1; i <= 6; i++) {
+      assertThat(client.prepareGet("library", "book", String.valueOf(i)).get().isExists()).isTrue();
+    }
+  }
+
+  @Test
+  public void should_apply_migration_with_compressed_bulk_requests() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_7").setCompression(true).setCompressionLevel(9);
+    int scriptsApplied = Migration.migrate(settings);
+
+    assertThat(scriptsApplied).isEqualTo(1);
+    assertThat(client.prepareGet("library", "book", "1").get().isExists()).isTrue();
+    assertThat(client.prepareGet("library", "book", "4").get().isExists()).isTrue();
+  }
+
+  @Test
+  public void should_apply_compressed_scripts() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_12");
+    int scriptsApplied = Migration.migrate(settings);
+
+    assertThat(scriptsApplied).isEqualTo(1);
+    assertThat(client.prepareGet("library", "book", "1").get().isExists()).isTrue();
+    assertThat(client.prepareGet("library", "book", "4").get().isExists()).isTrue();
+
+    // Checksum is unchanged, nothing to apply
+    scriptsApplied = Migration.migrate(settings);
+    assertThat(scriptsApplied).isEqualTo(0);
+  }
+
+  @Test
+  public void should_throw_an_exception_if_bulk_items_failed() throws Exception {
+    FlamingoSettings settings = createFlamingoSettings("library_9");
+    try {
+      Migration.migrate(settings);
+      failBecauseExceptionWasNotThrown(RuntimeException.class);
+    } catch (RuntimeException e) {
+      assertThat(e).hasMessageContaining("Error while executing 1.json");
+    }
+    client.admin().indices().prepareRefresh(".flamingo").get();
+    Map<String, Object> scriptMetadata = client.prepareSearch(".flamingo").get().getHits().getAt(0).getSource();
+    assertThat(scriptMetadata.get("succeeded")).isEqualTo(false);
+    assertThat(scriptMetadata.get("failedItems")).isEqualTo(1);
+    assertThat((List<?>) scriptMetadata.get("errors")).hasSize(1);
+  }
+
+  @Test
+  public void should_resume_failed_script_after_last_checkpoint() throws Exception {
+    // Third action of 1.json is invalid
+    FlamingoSettings settings = createFlamingoSettings("library_10").setBulkMaxActions(1).setBulkResume(true).setBulkCheckpointInterval(0);
+    try {
+      Migration.migrate(settings);
+      failBecauseExceptionWasNotThrown(RuntimeException.class);
+    } catch (RuntimeException e) {
+      assertThat(e).hasMessageContaining("Error while executing 1.json");
+    }
+    assertThat(client.prepareGet("library", "book", "2").get().isExists()).isTrue();
+
+    // 1.json is fixed, its first two actions are unchanged and must not be sent again
+    settings = createFlamingoSettings("library_11").setBulkMaxActions(1).setBulkResume(true).setBulkCheckpointInterval(0);
+    Migration.migrate(settings);
+    assertThat(client.prepareGet("library", "book", "1").get().getVersion()).isEqualTo(1);
+    assertThat(client.prepareGet("library", "book", "2").get().getVersion()).isEqualTo(1);
+    assertThat(client.prepareGet("library", "book", "3").get().isExists()).isTrue();
+    client.admin().indices().prepareRefresh(".flamingo").get();
+    Map<String, Object> scriptMetadata = client.prepareSearch(".flamingo").get().getHits().getAt(0).getSource();
+    assertThat(scriptMetadata.get("succeeded")).isEqualTo(true);
+    assertThat(((Map<?, ?>) scriptMetadata.get("progress")).get("line")).isEqualTo(6);
+  }
+
   private FlamingoSettings createFlamingoSettings(String scriptDir) throws URISyntaxException {
     NodesInfoResponse nodeInfos = client.admin().cluster().prepareNodesInfo().setHttp(true).get();
     InetSocketTransportAddress publishAddress = (InetSocketTransportAddress) nodeInfos.getNodes()[0].getHttp().address().publishAddress();
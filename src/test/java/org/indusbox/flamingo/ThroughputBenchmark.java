@@ -0,0 +1,211 @@
+package org.indusbox.flamingo;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.indusbox.flamingo.metrics.Timer;
+import org.indusbox.flamingo.scripts.ScriptManager;
+import org.indusbox.flamingo.settings.FlamingoSettings;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+
+/**
+ * End to end throughput of a migration against the embedded Elasticsearch node. Not run by the build, run it with:
+ * mvn test -Dtest=ThroughputBenchmark -Dthroughput.docs=100000 -Dflamingo.bulk.concurrency=2
+ * Scripts are generated from the throughput.* properties, the flamingo.* and elasticsearch.* properties configure the migration.
+ * Results are written as JSON to throughput.output. Heap and GC figures include the embedded node, which runs in the same JVM.
+ */
+public class ThroughputBenchmark {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ThroughputBenchmark.class);
+
+  private ElasticsearchLocalNode localNode;
+  private Client client;
+  private File scriptsDir;
+
+  @Before
+  public void setUp() throws IOException {
+    this.localNode = new ElasticsearchLocalNode();
+    this.client = this.localNode.getClient();
+    this.scriptsDir = Files.createTempDirectory("flamingo-throughput").toFile();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void measure_migration_throughput() throws Exception {
+    int scripts = Integer.getInteger("throughput.scripts", 4);
+    int docs = Integer.getInteger("throughput.docs", 50000);
+    int fields = Integer.getInteger("throughput.fields", 5);
+    int fieldSize = Integer.getInteger("throughput.fieldSize", 32);
+    File output = new File(System.getProperty("throughput.output", "target/throughput.json"));
+
+    long scriptBytes = 0;
+    for (int i = 0; i < scripts; i++) {
+      scriptBytes += generateScript(new File(this.scriptsDir, String.format("%03d_load.json", i)), i, docs, fields, fieldSize);
+    }
+    FlamingoSettings settings = createFlamingoSettings();
+
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      pool.resetPeakUsage();
+    }
+    long gcTime = gcTime();
+    long gcCount = gcCount();
+    long start = System.nanoTime();
+    int scriptsApplied;
+    Timer bulkLatency;
+    try (ScriptManager scriptManager = new ScriptManager(settings)) {
+      scriptsApplied = Migration.migrate(settings, scriptManager);
+      bulkLatency = scriptManager.getMetrics().getTimer("bulk.latency");
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    gcTime = gcTime() - gcTime;
+    gcCount = gcCount() - gcCount;
+
+    assertThat(scriptsApplied).isEqualTo(scripts);
+    long totalDocs = (long) scripts * docs;
+    JSONObject parameters = new JSONObject();
+    parameters.put("scripts", scripts);
+    parameters.put("docsPerScript", docs);
+    parameters.put("fields", fields);
+    parameters.put("fieldSize", fieldSize);
+    parameters.put("scriptBytes", scriptBytes);
+    parameters.put("settings", migrationProperties());
+    JSONObject results = new JSONObject();
+    results.put("seconds", seconds);
+    results.put("docsPerSecond", totalDocs / seconds);
+    results.put("megabytesPerSecond", scriptBytes / 1024.0 / 1024.0 / seconds);
+    results.put("bulkRequests", bulkLatency != null ? bulkLatency.getCount() : 0);
+    results.put("bulkLatencyP50Millis", percentile(bulkLatency, 0.50));
+    results.put("bulkLatencyP99Millis", percentile(bulkLatency, 0.99));
+    results.put("peakHeapBytes", peakHeap());
+    results.put("gcPauseMillis", gcTime);
+    results.put("gcCount", gcCount);
+    JSONObject report = new JSONObject();
+    report.put("parameters", parameters);
+    report.put("results", results);
+    report.put("javaVersion", System.getProperty("java.version"));
+    report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+
+    File outputDir = output.getAbsoluteFile().getParentFile();
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("Unable to create " + outputDir);
+    }
+    com.google.common.io.Files.write(report.toJSONString(), output, Charsets.UTF_8);
+    LOGGER.info("Throughput results written to {}: {}", output, report.toJSONString());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    this.localNode.clean();
+    for (File script : this.scriptsDir.listFiles()) {
+      Files.delete(script.toPath());
+    }
+    Files.delete(this.scriptsDir.toPath());
+  }
+
+  /**
+   * @return The size of the script, in bytes.
+   */
+  private static long generateScript(File script, int scriptIndex, int docs, int fields, int fieldSize) throws IOException {
+    Random random = new Random(scriptIndex);
+    char[] value = new char[fieldSize];
+    long bytes = 0;
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(script.toPath()), StandardCharsets.UTF_8))) {
+      StringBuilder line = new StringBuilder();
+      for (int doc = 0; doc < docs; doc++) {
+        line.setLength(0);
+        line.append("{\"index\":{\"_index\":\"load\",\"_type\":\"doc\",\"_id\":\"").append(scriptIndex).append('-').append(doc).append("\"}}\n{");
+        for (int field = 0; field < fields; field++) {
+          for (int i = 0; i < fieldSize; i++) {
+            value[i] = (char) ('a' + random.nextInt(26));
+          }
+          line.append(field == 0 ? "" : ",").append("\"field").append(field).append("\":\"").append(value).append('"');
+        }
+        line.append("}\n");
+        writer.append(line);
+        bytes += line.length();
+      }
+    }
+    return bytes;
+  }
+
+  private FlamingoSettings createFlamingoSettings() {
+    NodesInfoResponse nodeInfos = this.client.admin().cluster().prepareNodesInfo().setHttp(true).get();
+    InetSocketAddress address = ((InetSocketTransportAddress) nodeInfos.getNodes()[0].getHttp().address().publishAddress()).address();
+    Properties config = migrationProperties();
+    config.setProperty("flamingo.scriptsDir", this.scriptsDir.getPath());
+    config.setProperty("elasticsearch.protocol", "http");
+    config.setProperty("elasticsearch.host", address.getHostName());
+    config.setProperty("elasticsearch.port", String.valueOf(address.getPort()));
+    return FlamingoSettings.fromConfig(config);
+  }
+
+  /**
+   * @return The flamingo.* and elasticsearch.* system properties.
+   */
+  private static Properties migrationProperties() {
+    Properties properties = new Properties();
+    for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+      String name = (String) property.getKey();
+      if (name.startsWith("flamingo.") || name.startsWith("elasticsearch.")) {
+        properties.setProperty(name, (String) property.getValue());
+      }
+    }
+    return properties;
+  }
+
+  private static double percentile(Timer timer, double percentile) {
+    return timer != null ? timer.getPercentile(percentile) / 1e6 : 0;
+  }
+
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  private static long gcTime() {
+    long time = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      time += Math.max(collector.getCollectionTime(), 0);
+    }
+    return time;
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(collector.getCollectionCount(), 0);
+    }
+    return count;
+  }
+}
@@ -0,0 +1,66 @@
+package org.indusbox.flamingo.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.indusbox.flamingo.settings.FlamingoSettings;
+import org.junit.Test;
+
+public class AdaptiveBulkControllerTest {
+
+  private static final long MAX_BYTES = 16 * 1024;
+
+  @Test
+  public void should_use_configured_values_when_disabled() {
+    AdaptiveBulkController controller = new AdaptiveBulkController(createSettings(false));
+    controller.onResponse(MAX_BYTES, 100, 100, 10, 5);
+    assertThat(controller.getChunkBytes()).isEqualTo(MAX_BYTES);
+    assertThat(controller.getConcurrency()).isEqualTo(4);
+  }
+
+  @Test
+  public void should_grow_size_then_concurrency_while_latency_is_low() {
+    AdaptiveBulkController controller = new AdaptiveBulkController(createSettings(true));
+    assertThat(controller.getChunkBytes()).isEqualTo(MAX_BYTES / 4);
+    assertThat(controller.getConcurrency()).isEqualTo(1);
+
+    for (int i = 0; i < 12; i++) {
+      controller.onResponse(controller.getChunkBytes(), 100, 0, 10, 5);
+    }
+    assertThat(controller.getChunkBytes()).isEqualTo(MAX_BYTES);
+    assertThat(controller.getConcurrency()).isEqualTo(1);
+
+    for (int i = 0; i < 10; i++) {
+      controller.onResponse(controller.getChunkBytes(), 100, 0, 10, 5);
+    }
+    assertThat(controller.getConcurrency()).isEqualTo(4);
+  }
+
+  @Test
+  public void should_halve_size_and_concurrency_on_rejection() {
+    AdaptiveBulkController controller = new AdaptiveBulkController(createSettings(true));
+    for (int i = 0; i < 20; i++) {
+      controller.onResponse(controller.getChunkBytes(), 100, 0, 10, 5);
+    }
+    controller.onResponse(MAX_BYTES, 100, 10, 10, 5);
+    assertThat(controller.getChunkBytes()).isEqualTo(MAX_BYTES / 2);
+    assertThat(controller.getConcurrency()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_halve_size_when_latency_is_high_but_not_below_minimum() {
+    AdaptiveBulkController controller = new AdaptiveBulkController(createSettings(true));
+    for (int i = 0; i < 10; i++) {
+      controller.onResponse(controller.getChunkBytes(), 100, 0, 5000, 4000);
+    }
+    assertThat(controller.getChunkBytes()).isEqualTo(MAX_BYTES / 16);
+    assertThat(controller.getConcurrency()).isEqualTo(1);
+  }
+
+  private FlamingoSettings createSettings(boolean adaptive) {
+    return new FlamingoSettings()
+        .setBulkAdaptive(adaptive)
+        .setBulkMaxBytes(MAX_BYTES)
+        .setBulkConcurrency(4)
+        .setBulkTargetLatency(1000);
+  }
+}
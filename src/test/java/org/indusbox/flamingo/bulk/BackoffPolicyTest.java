@@ -0,0 +1,30 @@
+package org.indusbox.flamingo.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class BackoffPolicyTest {
+
+  @Test
+  public void should_increase_delay_exponentially_with_jitter() {
+    BackoffPolicy backoffPolicy = new BackoffPolicy(5, 60000);
+    assertThat(backoffPolicy.delay(0, 0)).isBetween(50L, 100L);
+    assertThat(backoffPolicy.delay(1, 100)).isBetween(100L, 200L);
+    assertThat(backoffPolicy.delay(4, 1500)).isBetween(800L, 1600L);
+  }
+
+  @Test
+  public void should_stop_after_max_retries() {
+    BackoffPolicy backoffPolicy = new BackoffPolicy(2, 60000);
+    assertThat(backoffPolicy.delay(1, 100)).isPositive();
+    assertThat(backoffPolicy.delay(2, 300)).isEqualTo(-1);
+  }
+
+  @Test
+  public void should_not_exceed_max_total_backoff() {
+    BackoffPolicy backoffPolicy = new BackoffPolicy(20, 1000);
+    assertThat(backoffPolicy.delay(10, 900)).isEqualTo(100);
+    assertThat(backoffPolicy.delay(11, 1000)).isEqualTo(-1);
+  }
+}
@@ -0,0 +1,146 @@
+package org.indusbox.flamingo.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.http.util.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+public class BulkChunkReaderTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final String INDEX_1 = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"1\" } }\n{ \"title\" : \"Dune\" }\n";
+  private static final String INDEX_2 = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"2\" } }\n{ \"title\" : \"Hyperion\" }\n";
+  private static final String DELETE_3 = "{ \"delete\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"3\" } }\n";
+
+  @Test
+  public void should_read_whole_script_in_one_chunk() throws IOException {
+    BulkChunkReader reader = createReader(INDEX_1 + DELETE_3 + INDEX_2, 1000, 1024 * 1024);
+    BulkChunk chunk = reader.next();
+    assertThat(chunk.getActionCount()).isEqualTo(3);
+    assertThat(chunk.toString("UTF-8")).isEqualTo(INDEX_1 + DELETE_3 + INDEX_2);
+    assertThat(reader.next()).isNull();
+  }
+
+  @Test
+  public void should_split_script_by_action_count() throws IOException {
+    BulkChunkReader reader = createReader(INDEX_1 + DELETE_3 + INDEX_2, 2, 1024 * 1024);
+    assertThat(reader.next().toString("UTF-8")).isEqualTo(INDEX_1 + DELETE_3);
+    assertThat(reader.next().toString("UTF-8")).isEqualTo(INDEX_2);
+    assertThat(reader.next()).isNull();
+  }
+
+  @Test
+  public void should_split_script_by_size_without_splitting_actions() throws IOException {
+    BulkChunkReader reader = createReader(INDEX_1 + INDEX_2 + DELETE_3, 1000, INDEX_1.length() + 10);
+    assertThat(reader.next().toString("UTF-8")).isEqualTo(INDEX_1);
+    assertThat(reader.next().toString("UTF-8")).isEqualTo(INDEX_2);
+    assertThat(reader.next().toString("UTF-8")).isEqualTo(DELETE_3);
+    assertThat(reader.next()).isNull();
+  }
+
+  @Test
+  public void should_send_an_action_bigger_than_max_size_alone() throws IOException {
+    BulkChunkReader reader = createReader(INDEX_1 + INDEX_2, 1000, 10);
+    assertThat(reader.next().getActionCount()).isEqualTo(1);
+    assertThat(reader.next().getActionCount()).isEqualTo(1);
+    assertThat(reader.next()).isNull();
+  }
+
+  @Test
+  public void should_skip_blank_lines_and_terminate_last_line() throws IOException {
+    BulkChunkReader reader = createReader("\n" + INDEX_1 + "  \n\n" + INDEX_2.trim(), 1000, 1024 * 1024);
+    assertThat(reader.next().toString("UTF-8")).isEqualTo(INDEX_1 + INDEX_2);
+    assertThat(reader.next()).isNull();
+  }
+
+  @Test
+  public void should_track_progress_at_the_end_of_each_chunk() throws IOException {
+    BulkChunkReader reader = createReader(INDEX_1 + INDEX_2 + DELETE_3, 1000, INDEX_1.length() + 10);
+    BulkChunk first = reader.next();
+    assertThat(first.getSequence()).isEqualTo(0);
+    assertThat(first.getProgress().getOffset()).isEqualTo(INDEX_1.length());
+    assertThat(first.getProgress().getLine()).isEqualTo(2);
+    assertThat(first.getProgress().getChecksum()).isEqualTo(Hashing.md5().hashString(INDEX_1, StandardCharsets.UTF_8).toString());
+    BulkChunk second = reader.next();
+    assertThat(second.getSequence()).isEqualTo(1);
+    assertThat(second.getProgress().getOffset()).isEqualTo(INDEX_1.length() + INDEX_2.length());
+    assertThat(second.getProgress().getLine()).isEqualTo(4);
+    assertThat(reader.next().getProgress().getChecksum()).isEqualTo(Hashing.md5().hashString(INDEX_1 + INDEX_2 + DELETE_3, StandardCharsets.UTF_8).toString());
+  }
+
+  @Test
+  public void should_extract_actions_into_a_sub_chunk() throws IOException {
+    BulkChunk chunk = createReader(INDEX_1 + DELETE_3 + INDEX_2, 1000, 1024 * 1024).next();
+    BulkChunk subChunk = chunk.subChunk(Arrays.asList(1, 2));
+    assertThat(subChunk.getActionCount()).isEqualTo(2);
+    assertThat(subChunk.toString("UTF-8")).isEqualTo(DELETE_3 + INDEX_2);
+    assertThat(subChunk.subChunk(Arrays.asList(1)).toString("UTF-8")).isEqualTo(INDEX_2);
+  }
+
+  @Test
+  public void should_read_a_script_file_smaller_than_a_chunk_at_once() throws IOException {
+    File script = temporaryFolder.newFile("1.json");
+    Files.write(INDEX_1 + DELETE_3 + INDEX_2.trim(), script, StandardCharsets.UTF_8);
+    try (BulkChunkReader reader = BulkChunkReader.open(script, 1000, 1024 * 1024, null)) {
+      BulkChunk chunk = reader.next();
+      assertThat(chunk.getActionCount()).isEqualTo(3);
+      assertThat(EntityUtils.toString(chunk.toEntity(), "UTF-8")).isEqualTo(INDEX_1 + DELETE_3 + INDEX_2);
+      assertThat(chunk.toEntity().getContentLength()).isEqualTo(chunk.size());
+      assertThat(chunk.subChunk(Arrays.asList(0, 2)).toString("UTF-8")).isEqualTo(INDEX_1 + INDEX_2);
+      assertThat(reader.next()).isNull();
+    }
+  }
+
+  @Test
+  public void should_skip_blank_lines_of_a_script_file() throws IOException {
+    File script = temporaryFolder.newFile("1.json");
+    Files.write(INDEX_1 + "\n" + INDEX_2, script, StandardCharsets.UTF_8);
+    try (BulkChunkReader reader = BulkChunkReader.open(script, 1000, 1024 * 1024, null)) {
+      BulkChunk chunk = reader.next();
+      assertThat(chunk.toString("UTF-8")).isEqualTo(INDEX_1 + INDEX_2);
+      assertThat(chunk.getProgress().getOffset()).isEqualTo(script.length());
+      assertThat(reader.next()).isNull();
+    }
+  }
+
+  @Test
+  public void should_resume_a_streamed_script_after_its_progress() throws IOException {
+    ByteSource script = ByteSource.wrap((INDEX_1 + INDEX_2 + DELETE_3).getBytes(StandardCharsets.UTF_8));
+    BulkProgress progress;
+    try (BulkChunkReader reader = BulkChunkReader.open("1.json.gz", script, 1, 1024 * 1024, null)) {
+      progress = reader.next().getProgress();
+    }
+    try (BulkChunkReader reader = BulkChunkReader.open("1.json.gz", script, 1000, 1024 * 1024, progress)) {
+      assertThat(reader.getResumedFrom()).isEqualTo(progress);
+      assertThat(reader.next().toString("UTF-8")).isEqualTo(INDEX_2 + DELETE_3);
+    }
+  }
+
+  @Test
+  public void should_throw_an_exception_if_source_line_is_missing() throws IOException {
+    BulkChunkReader reader = createReader(INDEX_1 + "{ \"index\" : { \"_id\" : \"2\" } }\n", 1000, 1024 * 1024);
+    try {
+      reader.next();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("missing source line");
+    }
+  }
+
+  private BulkChunkReader createReader(String script, int maxActions, long maxBytes) {
+    return new BulkChunkReader(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), maxActions, maxBytes);
+  }
+}
@@ -0,0 +1,140 @@
+package org.indusbox.flamingo.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.indusbox.flamingo.metrics.Metrics;
+import org.indusbox.flamingo.settings.FlamingoSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class BulkExecutorTest {
+
+  private static final String INDEX_1 = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"1\" } }\n{ \"title\" : \"Dune\" }\n";
+  private static final String INDEX_2 = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"2\" } }\n{ \"title\" : \"Hyperion\" }\n";
+  private static final String INDEX_3 = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"3\" } }\n{ \"title\" : \"Ubik\" }\n";
+  private static final String CREATED = "{\"index\":{\"status\":201}}";
+  private static final String FAILED = "{\"index\":{\"status\":400,\"error\":\"MapperParsingException[failed to parse]\"}}";
+  private static final String REJECTED = "{\"index\":{\"status\":429,\"error\":\"EsRejectedExecutionException[rejected execution]\"}}";
+
+  private HttpServer server;
+  private CloseableHttpClient client;
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+  private final List<String> responses = Collections.synchronizedList(new ArrayList<String>());
+  private final List<Integer> statusCodes = Collections.synchronizedList(new ArrayList<Integer>());
+  private volatile long responseDelay;
+
+  @Before
+  public void setUp() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.createContext("/_bulk", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.add(new String(ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8));
+        try {
+          Thread.sleep(responseDelay);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        byte[] response = responses.remove(0).getBytes(StandardCharsets.UTF_8);
+        int statusCode = statusCodes.isEmpty() ? 200 : statusCodes.remove(0);
+        exchange.sendResponseHeaders(statusCode, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(response);
+        }
+      }
+    });
+    this.server.start();
+    this.client = HttpClients.createDefault();
+  }
+
+  @Test
+  public void should_retry_only_rejected_items() throws IOException {
+    responses.add("{\"took\":1,\"errors\":true,\"items\":[" + CREATED + "," + REJECTED + "]}");
+    responses.add("{\"took\":1,\"errors\":true,\"items\":[" + REJECTED + "]}");
+    responses.add("{\"took\":1,\"errors\":false,\"items\":[" + CREATED + "]}");
+
+    Metrics metrics = new Metrics(null);
+    BulkResult result = execute(INDEX_1 + INDEX_2, new FlamingoSettings(), metrics);
+
+    assertThat(result.isSucceeded()).isTrue();
+    assertThat(result.getActions()).isEqualTo(2);
+    assertThat(result.getRetriedItems()).isEqualTo(2);
+    assertThat(requests).containsExactly(INDEX_1 + INDEX_2, INDEX_2, INDEX_2);
+    assertThat(metrics.getCounter("bulk.docs")).isEqualTo(2);
+    assertThat(metrics.getCounter("bulk.requests")).isEqualTo(3);
+    assertThat(metrics.getCounter("bulk.rejectedItems")).isEqualTo(2);
+  }
+
+  @Test
+  public void should_fail_rejected_items_when_retries_are_exhausted() throws IOException {
+    responses.add("{\"took\":1,\"errors\":true,\"items\":[" + CREATED + "," + REJECTED + "]}");
+    responses.add("{\"took\":1,\"errors\":true,\"items\":[" + REJECTED + "]}");
+
+    BulkResult result = execute(INDEX_1 + INDEX_2, new FlamingoSettings().setBulkMaxRetries(1));
+
+    assertThat(result.isSucceeded()).isFalse();
+    assertThat(result.getActions()).isEqualTo(2);
+    assertThat(result.getFailuresByStatus()).containsEntry(429, 1L);
+    assertThat(result.getErrorReasons()).containsExactly("EsRejectedExecutionException[rejected execution]");
+  }
+
+  @Test
+  public void should_retry_a_rejected_request_with_an_empty_response() throws IOException {
+    statusCodes.add(503);
+    responses.add("");
+    responses.add("{\"took\":1,\"errors\":false,\"items\":[" + CREATED + "," + CREATED + "]}");
+
+    BulkResult result = execute(INDEX_1 + INDEX_2, new FlamingoSettings());
+
+    assertThat(result.isSucceeded()).isTrue();
+    assertThat(result.getActions()).isEqualTo(2);
+    assertThat(result.getRetriedItems()).isEqualTo(2);
+    assertThat(requests).containsExactly(INDEX_1 + INDEX_2, INDEX_1 + INDEX_2);
+  }
+
+  @Test
+  public void should_not_send_chunks_after_a_failed_chunk() throws IOException {
+    // Responses are delayed, so that the next chunk waits for an in flight chunk to complete
+    responseDelay = 200;
+    responses.add("{\"took\":1,\"errors\":true,\"items\":[" + FAILED + "]}");
+    responses.add("{\"took\":1,\"errors\":false,\"items\":[" + CREATED + "]}");
+
+    BulkResult result = execute(INDEX_1 + INDEX_2 + INDEX_3, new FlamingoSettings().setBulkMaxBytes(100).setBulkConcurrency(2));
+
+    assertThat(result.isSucceeded()).isFalse();
+    assertThat(requests).containsOnly(INDEX_1, INDEX_2);
+  }
+
+  private BulkResult execute(String script, FlamingoSettings settings) throws IOException {
+    return execute(script, settings, new Metrics(null));
+  }
+
+  private BulkResult execute(String script, FlamingoSettings settings, Metrics metrics) throws IOException {
+    String uri = "http://localhost:" + this.server.getAddress().getPort();
+    BulkExecutor executor = new BulkExecutor(this.client, uri, settings, metrics);
+    return executor.execute(new BulkChunkReader(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), 1000, 1024 * 1024));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    this.client.close();
+    this.server.stop(0);
+  }
+}
@@ -0,0 +1,52 @@
+package org.indusbox.flamingo.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class BulkIndexAnalyzerTest {
+
+  @Test
+  public void should_list_the_indices_of_the_actions() throws IOException {
+    Set<String> indices = indices("{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"1\" } }\n"
+        + "{ \"_index\" : \"not_an_action\" }\n"
+        + "\n"
+        + "{ \"delete\" : { \"_index\" : \"orders\", \"_type\" : \"order\", \"_id\" : \"1\" } }\n"
+        + "{ \"update\" : { \"_type\" : \"book\", \"_index\" : \"library\", \"_id\" : \"1\" } }\n"
+        + "{ \"doc\" : { \"title\" : \"Ubik\" } }\n");
+
+    assertThat(indices).containsOnly("library", "orders");
+  }
+
+  @Test
+  public void should_not_know_the_indices_if_an_action_has_no_index() throws IOException {
+    Set<String> indices = indices("{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"1\" } }\n"
+        + "{ \"title\" : \"Ubik\" }\n"
+        + "{ \"index\" : { \"_type\" : \"book\", \"_id\" : \"2\" } }\n"
+        + "{ \"title\" : \"Valis\" }\n");
+
+    assertThat(indices).isNull();
+  }
+
+  @Test
+  public void should_skip_source_lines_larger_than_the_buffer() throws IOException {
+    StringBuilder title = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      title.append("Ubik ");
+    }
+    Set<String> indices = indices("{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"1\" } }\r\n"
+        + "{ \"title\" : \"" + title + "\" }\r\n"
+        + "{ \"delete\" : { \"_index\" : \"orders\", \"_type\" : \"order\", \"_id\" : \"1\" } }");
+
+    assertThat(indices).containsOnly("library", "orders");
+  }
+
+  private static Set<String> indices(String script) throws IOException {
+    return BulkIndexAnalyzer.indices(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)));
+  }
+}
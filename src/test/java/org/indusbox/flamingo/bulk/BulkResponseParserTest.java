@@ -0,0 +1,59 @@
+package org.indusbox.flamingo.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class BulkResponseParserTest {
+
+  @Test
+  public void should_count_items_of_a_successful_response() throws IOException {
+    BulkResult result = parse("{\"took\":12,\"errors\":false,\"items\":["
+        + "{\"index\":{\"_index\":\"library\",\"_type\":\"book\",\"_id\":\"1\",\"_version\":1,\"status\":201}},"
+        + "{\"delete\":{\"_index\":\"library\",\"_type\":\"book\",\"_id\":\"2\",\"_version\":2,\"status\":200,\"found\":true}}]}", 10);
+
+    assertThat(result.isSucceeded()).isTrue();
+    assertThat(result.getActions()).isEqualTo(2);
+    assertThat(result.getTook()).isEqualTo(12);
+    assertThat(result.getFailuresByStatus()).isEmpty();
+  }
+
+  @Test
+  public void should_collect_failed_and_rejected_items() throws IOException {
+    BulkResult result = parse("{\"took\":3,\"errors\":true,\"items\":["
+        + "{\"create\":{\"_index\":\"library\",\"_type\":\"book\",\"_id\":\"1\",\"_version\":1,\"status\":201}},"
+        + "{\"create\":{\"_index\":\"library\",\"_type\":\"book\",\"_id\":\"1\",\"status\":409,\"error\":\"DocumentAlreadyExistsException[[library][2] [book][1]: document already exists]\"}},"
+        + "{\"index\":{\"_index\":\"library\",\"_type\":\"book\",\"_id\":\"3\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution\",\"caused_by\":{\"type\":\"x\"}}}},"
+        + "{\"index\":{\"_index\":\"library\",\"_type\":\"book\",\"_id\":\"4\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution\"}}}]}", 2);
+
+    assertThat(result.isSucceeded()).isFalse();
+    assertThat(result.getActions()).isEqualTo(2);
+    assertThat(result.getFailedItems()).isEqualTo(1);
+    assertThat(result.getFailuresByStatus()).containsOnly(entry(409, 1L));
+    assertThat(result.getRejectedItems()).containsExactly(2, 3);
+
+    result.failRejectedItems();
+    assertThat(result.getActions()).isEqualTo(4);
+    assertThat(result.getFailedItems()).isEqualTo(3);
+    assertThat(result.getFailuresByStatus()).containsOnly(entry(409, 1L), entry(429, 2L));
+    assertThat(result.getErrorReasons()).containsExactly(
+        "DocumentAlreadyExistsException[[library][2] [book][1]: document already exists]",
+        "es_rejected_execution_exception: rejected execution");
+  }
+
+  @Test
+  public void should_keep_top_level_error() throws IOException {
+    BulkResult result = parse("{\"error\":\"ActionRequestValidationException[Validation Failed: 1: no requests added;]\",\"status\":400}", 10);
+
+    assertThat(result.getErrorReasons()).containsExactly("ActionRequestValidationException[Validation Failed: 1: no requests added;]");
+  }
+
+  private BulkResult parse(String response, int maxErrorReasons) throws IOException {
+    return BulkResponseParser.parse(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), maxErrorReasons);
+  }
+}
@@ -0,0 +1,26 @@
+package org.indusbox.flamingo.bulk;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+public class GzipCompressedEntityTest {
+
+  @Test
+  public void should_read_the_compressed_content() throws IOException {
+    String content = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"1\" } }\n{ \"title\" : \"Ubik\" }\n";
+    GzipCompressedEntity entity = new GzipCompressedEntity(new StringEntity(content, Charsets.UTF_8), Deflater.BEST_SPEED);
+
+    try (GZIPInputStream in = new GZIPInputStream(entity.getContent())) {
+      assertThat(new String(ByteStreams.toByteArray(in), Charsets.UTF_8)).isEqualTo(content);
+    }
+  }
+}
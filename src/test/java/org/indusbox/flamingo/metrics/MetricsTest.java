@@ -0,0 +1,59 @@
+package org.indusbox.flamingo.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+  @Test
+  public void should_add_counters_and_forward_them_to_the_registry() {
+    final List<String> forwarded = new ArrayList<>();
+    Metrics metrics = new Metrics(new MetricsRegistry() {
+      @Override
+      public void increment(String name, long amount) {
+        forwarded.add(name + "=" + amount);
+      }
+
+      @Override
+      public void record(String name, long nanos) {
+        forwarded.add(name + ":" + nanos);
+      }
+    });
+    metrics.increment("bulk.docs", 10);
+    metrics.increment("bulk.docs", 5);
+    metrics.record("bulk.latency", 1000);
+    assertThat(metrics.getCounter("bulk.docs")).isEqualTo(15);
+    assertThat(metrics.getCounter("bulk.requests")).isEqualTo(0);
+    assertThat(metrics.getTimerCounts()).containsEntry("bulk.latency", 1L);
+    assertThat(forwarded).containsExactly("bulk.docs=10", "bulk.docs=5", "bulk.latency:1000");
+  }
+
+  @Test
+  public void should_compute_percentiles_within_the_bucket_precision() {
+    Metrics metrics = new Metrics(null);
+    for (long millis = 1; millis <= 100; millis++) {
+      metrics.record("script.execution", millis * 1000000);
+    }
+    Timer timer = metrics.getTimer("script.execution");
+    assertThat(timer.getCount()).isEqualTo(100);
+    assertThat(timer.getTotal()).isEqualTo(5050L * 1000000);
+    assertThat(timer.getMax()).isEqualTo(100L * 1000000);
+    assertThat(timer.getPercentile(0.5)).isBetween(50L * 1000000, (long) (50 * 1000000 * 1.125));
+    assertThat(timer.getPercentile(0.99)).isBetween(99L * 1000000, 100L * 1000000);
+    assertThat(timer.getPercentile(1)).isEqualTo(100L * 1000000);
+  }
+
+  @Test
+  public void should_summarize_counters_and_timers() {
+    Metrics metrics = new Metrics(null);
+    metrics.increment("scripts.executed", 2);
+    metrics.record("phase.scan", 3000000);
+    assertThat(metrics.getSummary())
+        .contains("scripts.executed: 2")
+        .contains("phase.scan: count=1, total=3.0ms");
+  }
+}
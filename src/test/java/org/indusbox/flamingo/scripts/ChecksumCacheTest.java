@@ -0,0 +1,76 @@
+package org.indusbox.flamingo.scripts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+public class ChecksumCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_reuse_checksums_of_unchanged_scripts() throws IOException {
+    File scriptsDir = this.folder.newFolder("scripts");
+    File cacheFile = new File(this.folder.getRoot(), "checksums");
+    File script = new File(scriptsDir, "1.json");
+    Files.write("{}\n", script, StandardCharsets.UTF_8);
+    ChecksumCache cache = ChecksumCache.load(cacheFile);
+    String checksum = ScriptInventory.scan(scriptsDir, cache).getScript("1.json").getChecksum(ChecksumAlgorithm.MD5);
+    cache.save();
+
+    ChecksumCache loadedCache = ChecksumCache.load(cacheFile);
+    assertThat(loadedCache.get(ScriptInventory.scan(scriptsDir).getScript("1.json"), ChecksumAlgorithm.MD5)).isEqualTo(checksum);
+  }
+
+  @Test
+  public void should_invalidate_checksums_of_modified_scripts() throws IOException {
+    File scriptsDir = this.folder.newFolder("scripts");
+    File cacheFile = new File(scriptsDir, ChecksumCache.DEFAULT_FILE_NAME);
+    File script = new File(scriptsDir, "1.json");
+    Files.write("{}\n", script, StandardCharsets.UTF_8);
+    ChecksumCache cache = ChecksumCache.load(cacheFile);
+    String checksum = ScriptInventory.scan(scriptsDir, cache).getScript("1.json").getChecksum(ChecksumAlgorithm.MD5);
+    cache.save();
+
+    Files.write("{ }\n", script, StandardCharsets.UTF_8);
+    ScriptInventory inventory = ScriptInventory.scan(scriptsDir, ChecksumCache.load(cacheFile));
+    assertThat(inventory.getScripts()).hasSize(1);
+    assertThat(inventory.getScript("1.json").getChecksum(ChecksumAlgorithm.MD5)).isNotEqualTo(checksum).isEqualTo(ScriptFile.checksum(script));
+  }
+
+  @Test
+  public void should_keep_the_checksums_of_each_algorithm() throws IOException {
+    File scriptsDir = this.folder.newFolder("scripts");
+    File cacheFile = new File(this.folder.getRoot(), "checksums");
+    Files.write("{}\n", new File(scriptsDir, "1.json"), StandardCharsets.UTF_8);
+    ChecksumCache cache = ChecksumCache.load(cacheFile);
+    ScriptEntry script = ScriptInventory.scan(scriptsDir, cache).getScript("1.json");
+    String md5 = script.getChecksum(ChecksumAlgorithm.MD5);
+    String sha256 = script.getChecksum(ChecksumAlgorithm.SHA256);
+    cache.save();
+
+    ChecksumCache loadedCache = ChecksumCache.load(cacheFile);
+    ScriptEntry loadedScript = ScriptInventory.scan(scriptsDir).getScript("1.json");
+    assertThat(loadedCache.get(loadedScript, ChecksumAlgorithm.MD5)).isEqualTo(md5);
+    assertThat(loadedCache.get(loadedScript, ChecksumAlgorithm.SHA256)).isEqualTo(sha256);
+  }
+
+  @Test
+  public void should_ignore_a_corrupted_cache() throws IOException {
+    File cacheFile = this.folder.newFile("checksums");
+    Files.write("corrupted", cacheFile, StandardCharsets.UTF_8);
+    File scriptsDir = this.folder.newFolder("scripts");
+    Files.write("{}\n", new File(scriptsDir, "1.json"), StandardCharsets.UTF_8);
+
+    assertThat(ChecksumCache.load(cacheFile).get(ScriptInventory.scan(scriptsDir).getScript("1.json"), ChecksumAlgorithm.MD5)).isNull();
+  }
+}
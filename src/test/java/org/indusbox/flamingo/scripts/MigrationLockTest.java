@@ -0,0 +1,82 @@
+package org.indusbox.flamingo.scripts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class MigrationLockTest {
+
+  private HttpServer server;
+  private CloseableHttpClient client;
+  private final AtomicInteger writes = new AtomicInteger();
+  private final AtomicInteger deletes = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.createContext("/.flamingo/migration-lock/migration", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        ByteStreams.toByteArray(exchange.getRequestBody());
+        if ("DELETE".equals(exchange.getRequestMethod())) {
+          deletes.incrementAndGet();
+          respond(exchange, 200, "{\"found\":true,\"_version\":2}");
+        } else if (writes.getAndIncrement() == 0) {
+          respond(exchange, 201, "{\"_version\":1,\"created\":true}");
+        } else {
+          // Elasticsearch can't be reached anymore
+          respond(exchange, 503, "{\"error\":\"unavailable\"}");
+        }
+      }
+    });
+    this.server.start();
+    this.client = HttpClients.createDefault();
+  }
+
+  @Test
+  public void should_lose_the_lock_once_its_lease_has_expired_without_renewal() throws Exception {
+    String uri = "http://localhost:" + this.server.getAddress().getPort();
+    try (MigrationLock lock = MigrationLock.acquire(this.client, uri, ".flamingo", 300, 1000)) {
+      assertThat(lock.isLost()).isFalse();
+      Thread.sleep(600);
+      assertThat(lock.isLost()).isTrue();
+      try {
+        lock.check();
+        failBecauseExceptionWasNotThrown(IllegalStateException.class);
+      } catch (IllegalStateException e) {
+        assertThat(e).hasMessageContaining("lock has been taken over");
+      }
+    }
+    assertThat(this.deletes.get()).isEqualTo(0);
+  }
+
+  private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+    byte[] response = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(statusCode, response.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(response);
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    this.client.close();
+    this.server.stop(0);
+  }
+}
@@ -0,0 +1,35 @@
+package org.indusbox.flamingo.scripts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+public class MigrationStateTest {
+
+  @Test
+  public void should_index_scripts_by_file_name() {
+    ScriptMetadata first = new ScriptMetadata("a", "1.json", "c1", DateTime.parse("2016-01-01"), true);
+    ScriptMetadata second = new ScriptMetadata("b", "dir/2.json", "c2", DateTime.parse("2016-01-02"), true);
+    MigrationState state = new MigrationState(Arrays.asList(first, second));
+
+    assertThat(state.getScript("1.json")).isSameAs(first);
+    assertThat(state.getScript("dir/2.json")).isSameAs(second);
+    assertThat(state.getScript("2.json")).isNull();
+    assertThat(state.getScripts()).containsExactly(first, second);
+  }
+
+  @Test
+  public void should_find_the_latest_and_failed_scripts() {
+    ScriptMetadata latest = new ScriptMetadata("a", "1.json", "c1", DateTime.parse("2016-01-03"), false);
+    ScriptMetadata second = new ScriptMetadata("b", "2.json", "c2", DateTime.parse("2016-01-02"), true);
+    MigrationState state = new MigrationState(Arrays.asList(latest, second));
+
+    assertThat(state.getLatestScript()).isSameAs(latest);
+    assertThat(state.getFailedScripts()).containsExactly(latest);
+    assertThat(MigrationState.empty().getLatestScript()).isNull();
+    assertThat(MigrationState.empty().isEmpty()).isTrue();
+  }
+}
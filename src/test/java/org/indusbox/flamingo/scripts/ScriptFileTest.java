@@ -3,15 +3,30 @@ package org.indusbox.flamingo.scripts;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
 
 public class ScriptFileTest {
 
+  private static final String SCRIPT = "{ \"index\" : { \"_index\" : \"library\", \"_type\" : \"book\", \"_id\" : \"1\" } }\n"
+      + "{ \"title\" : \"Do Androids Dream of Electric Sheep?\" }\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void should_ignore_invalid_file_name() throws IOException, URISyntaxException {
     URL resource = ScriptFileTest.class.getClassLoader().getResource("./scripts");
@@ -19,7 +34,7 @@ public class ScriptFileTest {
       throw new RuntimeException("Unable to find scripts directory");
     }
     List<File> scripts = ScriptFile.getScripts(new File(resource.toURI()));
-    assertThat(scripts).extracting("name").containsExactly("1.json", "10.json", "2.json");
+    assertThat(scripts).extracting("name").containsExactly("1.json", "10.json", "2.json", "3_compressed.json.gz");
   }
 
   @Test
@@ -30,4 +45,34 @@ public class ScriptFileTest {
       assertThat(e).hasMessage("Scripts directory unknown doesn't exists");
     }
   }
+
+  @Test
+  public void should_compute_the_same_checksum_for_compressed_scripts() throws IOException {
+    File script = this.folder.newFile("1.json");
+    Files.write(SCRIPT, script, StandardCharsets.UTF_8);
+    File fastestScript = gzip(SCRIPT, "2.json.gz", Deflater.BEST_SPEED);
+    File smallestScript = gzip(SCRIPT, "3.json.gz", Deflater.BEST_COMPRESSION);
+
+    assertThat(fastestScript.length()).isNotEqualTo(smallestScript.length());
+    assertThat(ScriptFile.checksum(fastestScript)).isEqualTo(ScriptFile.checksum(script));
+    assertThat(ScriptFile.checksum(smallestScript)).isEqualTo(ScriptFile.checksum(script));
+  }
+
+  @Test
+  public void should_read_compressed_scripts_index() {
+    assertThat(ScriptFile.getIndex("3.json.gz")).isEqualTo(3);
+    assertThat(ScriptFile.getIndex("3_compressed.json.gz")).isEqualTo(3);
+  }
+
+  private File gzip(String content, String fileName, final int level) throws IOException {
+    File file = this.folder.newFile(fileName);
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file)) {
+      {
+        this.def.setLevel(level);
+      }
+    }) {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return file;
+  }
 }
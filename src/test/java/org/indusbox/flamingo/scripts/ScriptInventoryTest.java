@@ -0,0 +1,73 @@
+package org.indusbox.flamingo.scripts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+public class ScriptInventoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_index_scripts_by_relative_name() throws IOException {
+    File scriptsDir = this.folder.getRoot();
+    File first = this.folder.newFile("1_first.json");
+    Files.write("{}", first, StandardCharsets.UTF_8);
+    this.folder.newFolder("2_dir");
+    File nested = new File(scriptsDir, "2_dir/1_nested.json");
+    Files.write("{}\n", nested, StandardCharsets.UTF_8);
+
+    ScriptInventory inventory = ScriptInventory.scan(scriptsDir);
+
+    assertThat(inventory.getScripts()).extracting("name").containsExactly("1_first.json", "2_dir/1_nested.json");
+    ScriptEntry script = inventory.getScript("2_dir/1_nested.json");
+    assertThat(script.getFile()).isEqualTo(nested.getCanonicalFile());
+    assertThat(script.getSize()).isEqualTo(3);
+    assertThat(script.getLastModified()).isEqualTo(nested.lastModified());
+    assertThat(script.getChecksum(ChecksumAlgorithm.MD5)).isEqualTo(Hashing.md5().hashString("{}\n", StandardCharsets.UTF_8).toString());
+    assertThat(inventory.getScript("1_nested.json")).isNull();
+  }
+
+  @Test
+  public void should_scan_nested_directories_and_reuse_unchanged_listings() throws IOException {
+    File scriptsDir = this.folder.newFolder("scripts");
+    File manifestFile = new File(this.folder.getRoot(), "inventory");
+    File deepDir = new File(scriptsDir, "1_dir/1_deep");
+    deepDir.mkdirs();
+    Files.write("{}", new File(deepDir, "1_first.json"), StandardCharsets.UTF_8);
+    Files.write("{}", new File(scriptsDir, "2_second.json"), StandardCharsets.UTF_8);
+
+    assertThat(ScriptInventory.scan(scriptsDir, null, manifestFile).getScripts()).extracting("name")
+        .containsExactly("1_dir/1_deep/1_first.json", "2_second.json");
+    assertThat(manifestFile).exists();
+
+    // Unchanged directories are taken from the manifest, the deep directory is listed again
+    Files.write("{}", new File(deepDir, "2_added.json"), StandardCharsets.UTF_8);
+    deepDir.setLastModified(deepDir.lastModified() + 1000);
+
+    assertThat(ScriptInventory.scan(scriptsDir, null, manifestFile).getScripts()).extracting("name")
+        .containsExactly("1_dir/1_deep/1_first.json", "1_dir/1_deep/2_added.json", "2_second.json");
+  }
+
+  @Test
+  public void should_change_the_fingerprint_when_a_script_changes() throws IOException {
+    File script = this.folder.newFile("1_first.json");
+    Files.write("{}", script, StandardCharsets.UTF_8);
+    String fingerprint = ScriptInventory.scan(this.folder.getRoot()).fingerprint(ChecksumAlgorithm.MD5, 2);
+
+    assertThat(ScriptInventory.scan(this.folder.getRoot()).fingerprint(ChecksumAlgorithm.MD5, 1)).isEqualTo(fingerprint);
+    assertThat(ScriptInventory.scan(this.folder.getRoot()).fingerprint(ChecksumAlgorithm.SHA256, 1)).isNotEqualTo(fingerprint);
+    Files.write("{}", this.folder.newFile("2_second.json"), StandardCharsets.UTF_8);
+    assertThat(ScriptInventory.scan(this.folder.getRoot()).fingerprint(ChecksumAlgorithm.MD5, 1)).isNotEqualTo(fingerprint);
+  }
+}
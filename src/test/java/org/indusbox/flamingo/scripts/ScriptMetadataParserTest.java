@@ -0,0 +1,55 @@
+package org.indusbox.flamingo.scripts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Charsets;
+
+public class ScriptMetadataParserTest {
+
+  @Test
+  public void should_parse_a_hit() throws IOException {
+    String hit = "{\"_index\":\".flamingo\",\"_id\":\"AVx\",\"_score\":null,\"_source\":{\"fileName\":\"dir/1.json\",\"checksum\":\"abc\","
+        + "\"executedDate\":\"2016-04-01T10:15:30.000\",\"succeeded\":false,\"errors\":[\"boom\"],"
+        + "\"progress\":{\"offset\":120,\"line\":4,\"checksum\":\"def\"}},\"sort\":[\"dir/1.json\"]}";
+    try (JsonParser parser = new JsonFactory().createParser(hit)) {
+      parser.nextToken();
+      ScriptMetadata scriptMetadata = ScriptMetadataParser.parseHit(parser);
+
+      assertThat(parser.getCurrentToken()).isEqualTo(JsonToken.END_OBJECT);
+      assertThat(parser.nextToken()).isNull();
+      assertThat(scriptMetadata.getId()).isEqualTo("AVx");
+      assertThat(scriptMetadata.getFileName()).isEqualTo("dir/1.json");
+      assertThat(scriptMetadata.getChecksum()).isEqualTo("abc");
+      assertThat(scriptMetadata.getExecutedDate().getYear()).isEqualTo(2016);
+      assertThat(scriptMetadata.isSucceeded()).isFalse();
+      assertThat(scriptMetadata.getProgress().getOffset()).isEqualTo(120);
+      assertThat(scriptMetadata.getProgress().getLine()).isEqualTo(4);
+      assertThat(scriptMetadata.getProgress().getChecksum()).isEqualTo("def");
+    }
+  }
+
+  @Test
+  public void should_parse_the_first_hits_of_a_search_response() throws IOException {
+    String response = "{\"took\":2,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},"
+        + "\"hits\":{\"total\":3,\"max_score\":null,\"hits\":["
+        + "{\"_id\":\"1\",\"_source\":{\"fileName\":\"1.json\",\"checksum\":\"a\",\"executedDate\":\"2016-04-01T10:15:30.000\",\"succeeded\":true}},"
+        + "{\"_id\":\"2\",\"_source\":{\"fileName\":\"2.json\",\"checksum\":\"b\",\"executedDate\":\"2016-04-01T10:15:31.000\",\"succeeded\":true}},"
+        + "{\"_id\":\"3\",\"_source\":{\"fileName\":\"3.json\",\"checksum\":\"c\",\"executedDate\":\"2016-04-01T10:15:32.000\",\"succeeded\":false}}"
+        + "]}}";
+    List<ScriptMetadata> hits = ScriptMetadataParser.parseHits(new ByteArrayInputStream(response.getBytes(Charsets.UTF_8)), 2);
+
+    assertThat(hits).hasSize(2);
+    assertThat(hits.get(0).getId()).isEqualTo("1");
+    assertThat(hits.get(1).getFileName()).isEqualTo("2.json");
+    assertThat(ScriptMetadataParser.parseTotal(new ByteArrayInputStream(response.getBytes(Charsets.UTF_8)))).isEqualTo(3);
+  }
+}
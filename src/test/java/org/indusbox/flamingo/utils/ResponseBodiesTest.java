@@ -0,0 +1,18 @@
+package org.indusbox.flamingo.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class ResponseBodiesTest {
+
+  @Test
+  public void should_truncate_long_bodies() throws Exception {
+    assertThat(ResponseBodies.abbreviate(new StringEntity("{\"error\":\"index_not_found\"}", Charsets.UTF_8), 9)).isEqualTo("{\"error\":...");
+    assertThat(ResponseBodies.abbreviate(new StringEntity("{}", Charsets.UTF_8), 2)).isEqualTo("{}");
+    assertThat(ResponseBodies.abbreviate(null, 10)).isEmpty();
+  }
+}